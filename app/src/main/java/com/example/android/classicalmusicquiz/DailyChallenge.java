@@ -0,0 +1,344 @@
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package com.example.android.classicalmusicquiz;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Daily challenge decks. The date seeds every question of the game, and decks are only ever
+ * built from the bundled samples, so everyone gets the same questions and answers on the same
+ * day whatever user catalogs they have.
+ *
+ * A deck is a packed int array: the question count, then for each question the answer sample
+ * ID, the number of candidates and NUM_CANDIDATES candidate sample IDs padded with -1. Decks
+ * for the next few days are built in parallel and cached on disk, so starting a challenge is a
+ * single file read.
+ */
+class DailyChallenge {
+
+    static final int NUM_CANDIDATES = 4;
+    private static final int QUESTION_STRIDE = NUM_CANDIDATES + 2;
+    private static final int DECK_FILE_MAGIC = 0x44434b31;
+    private static final int HEADER_INTS = 4;
+    private static final int PRECOMPUTED_DAYS = 7;
+    private static final long SEED_MULTIPLIER = 0x9e3779b97f4a7c15L;
+    private static final String DECK_DIRECTORY = "daily";
+
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor();
+    // Precomputing gets its own background priority thread, so a challenge the user just
+    // started never queues behind a week of deck builds.
+    private static final ExecutorService sPrecomputeExecutor =
+            Executors.newSingleThreadExecutor(DailyChallenge::newBackgroundThread);
+
+    private static int sCachedDay = -1;
+    private static int[] sCachedDeck;
+
+    /**
+     * Receives a loaded deck on the main thread.
+     */
+    interface DeckCallback {
+        void onDeckLoaded(int[] deck);
+    }
+
+    /**
+     * @return The seed for today's challenge, the local date as yyyyMMdd.
+     */
+    static int today() {
+        return getDaySeed(Calendar.getInstance());
+    }
+
+    /**
+     * @param calendar The date of the challenge.
+     * @return The seed for that date's challenge, as yyyyMMdd.
+     */
+    static int getDaySeed(Calendar calendar) {
+        return calendar.get(Calendar.YEAR) * 10000
+                + (calendar.get(Calendar.MONTH) + 1) * 100
+                + calendar.get(Calendar.DAY_OF_MONTH);
+    }
+
+    /**
+     * @param day The day seed.
+     * @return The game mode challenge scores for that day are ranked under.
+     */
+    static String getMode(int day) {
+        return "daily-" + day;
+    }
+
+    /**
+     * Builds the deck for a day by playing a whole game with a generator seeded by the date.
+     * @param day The day seed.
+     * @param sampleIDs The IDs of all samples in the catalog, in any order.
+     * @return The packed deck.
+     */
+    static int[] buildDeck(int day, List<Integer> sampleIDs) {
+        ArrayList<Integer> remainingSampleIDs = new ArrayList<>(sampleIDs);
+        Collections.sort(remainingSampleIDs);
+        Random random = new Random(day * SEED_MULTIPLIER);
+
+        int[] deck = new int[1 + remainingSampleIDs.size() * QUESTION_STRIDE];
+        int questionCount = 0;
+        while (true) {
+            ArrayList<Integer> question = QuizUtils.generateQuestion(remainingSampleIDs, random);
+            if (question.size() < 2) {
+                break;
+            }
+            int answerSampleID = QuizUtils.getCorrectAnswerID(question, random);
+
+            int offset = 1 + questionCount * QUESTION_STRIDE;
+            deck[offset] = answerSampleID;
+            deck[offset + 1] = question.size();
+            for (int i = 0; i < NUM_CANDIDATES; i++) {
+                deck[offset + 2 + i] = i < question.size() ? question.get(i) : -1;
+            }
+            questionCount++;
+            remainingSampleIDs.remove(Integer.valueOf(answerSampleID));
+        }
+        deck[0] = questionCount;
+        return Arrays.copyOf(deck, 1 + questionCount * QUESTION_STRIDE);
+    }
+
+    /**
+     * @param deck A packed deck.
+     * @return The number of questions in the deck.
+     */
+    static int getQuestionCount(int[] deck) {
+        return deck[0];
+    }
+
+    /**
+     * @param deck A packed deck.
+     * @param question The index of the question.
+     * @return The ID of the sample that answers the question.
+     */
+    static int getAnswerSampleID(int[] deck, int question) {
+        return deck[1 + question * QUESTION_STRIDE];
+    }
+
+    /**
+     * @param deck A packed deck.
+     * @param question The index of the question.
+     * @return The IDs of the possible answers to the question.
+     */
+    static ArrayList<Integer> getQuestionSampleIDs(int[] deck, int question) {
+        int offset = 1 + question * QUESTION_STRIDE;
+        ArrayList<Integer> sampleIDs = new ArrayList<>(deck[offset + 1]);
+        for (int i = 0; i < deck[offset + 1]; i++) {
+            sampleIDs.add(deck[offset + 2 + i]);
+        }
+        return sampleIDs;
+    }
+
+    /**
+     * Gets the deck for a day from memory or the disk cache, building and caching it if needed.
+     * @param context The application context.
+     * @param day The day seed.
+     * @return The packed deck.
+     */
+    static synchronized int[] getDeck(Context context, int day) {
+        if (day == sCachedDay) {
+            return sCachedDeck;
+        }
+        List<Integer> sampleIDs = getBundledSampleIDs(context);
+        int catalogHash = sampleIDs.hashCode();
+        File deckFile = getDeckFile(context, day);
+
+        int[] deck = readDeck(deckFile, day, catalogHash);
+        if (deck == null) {
+            deck = buildDeck(day, sampleIDs);
+            writeDeck(deckFile, day, catalogHash, deck);
+        }
+        sCachedDay = day;
+        sCachedDeck = deck;
+        return deck;
+    }
+
+    /**
+     * Gets the deck for a day in the background, so starting a challenge never waits on the disk
+     * or a deck build on the main thread.
+     * @param context The application context.
+     * @param day The day seed.
+     * @param callback Receives the deck on the main thread.
+     */
+    static void loadDeck(Context context, final int day, final DeckCallback callback) {
+        final Context appContext = context.getApplicationContext();
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+        sExecutor.execute(() -> {
+            final int[] deck = getDeck(appContext, day);
+            mainHandler.post(() -> callback.onDeckLoaded(deck));
+        });
+    }
+
+    /**
+     * @param context The application context.
+     * @return The IDs of the bundled samples, which every deck is built from.
+     */
+    private static List<Integer> getBundledSampleIDs(Context context) {
+        List<Sample> samples = Sample.getBundledSamples(context);
+        ArrayList<Integer> sampleIDs = new ArrayList<>(samples.size());
+        for (Sample sample : samples) {
+            sampleIDs.add(sample.getSampleID());
+        }
+        return sampleIDs;
+    }
+
+    /**
+     * Builds the decks for today and the next few days in parallel at background priority, and
+     * deletes the decks of days that have passed. loadDeck doesn't wait for it.
+     * @param context The application context.
+     */
+    static void precomputeDecks(Context context) {
+        final Context appContext = context.getApplicationContext();
+        sPrecomputeExecutor.execute(() -> {
+            final List<Integer> sampleIDs = getBundledSampleIDs(appContext);
+            final int catalogHash = sampleIDs.hashCode();
+            int today = today();
+            deleteExpiredDecks(appContext, today);
+
+            Calendar calendar = Calendar.getInstance();
+            ArrayList<Callable<Void>> tasks = new ArrayList<>(PRECOMPUTED_DAYS);
+            for (int i = 0; i < PRECOMPUTED_DAYS; i++) {
+                final int day = getDaySeed(calendar);
+                final File deckFile = getDeckFile(appContext, day);
+                calendar.add(Calendar.DAY_OF_MONTH, 1);
+                if (readDeck(deckFile, day, catalogHash) != null) {
+                    continue;
+                }
+                tasks.add(() -> {
+                    writeDeck(deckFile, day, catalogHash, buildDeck(day, sampleIDs));
+                    return null;
+                });
+            }
+            if (tasks.isEmpty()) {
+                return;
+            }
+
+            int threads = Math.min(tasks.size(), Runtime.getRuntime().availableProcessors());
+            ExecutorService pool = Executors.newFixedThreadPool(threads,
+                    DailyChallenge::newBackgroundThread);
+            try {
+                pool.invokeAll(tasks);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                pool.shutdown();
+            }
+        });
+    }
+
+    private static Thread newBackgroundThread(final Runnable runnable) {
+        return new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            runnable.run();
+        }, "DailyChallengePrecompute");
+    }
+
+    private static File getDeckFile(Context context, int day) {
+        return new File(new File(context.getCacheDir(), DECK_DIRECTORY), day + ".deck");
+    }
+
+    private static void deleteExpiredDecks(Context context, int today) {
+        File[] deckFiles = new File(context.getCacheDir(), DECK_DIRECTORY).listFiles();
+        if (deckFiles == null) {
+            return;
+        }
+        for (File deckFile : deckFiles) {
+            String name = deckFile.getName();
+            try {
+                int day = Integer.parseInt(name.substring(0, name.indexOf('.')));
+                if (day < today && !deckFile.delete()) {
+                    deckFile.deleteOnExit();
+                }
+            } catch (NumberFormatException | IndexOutOfBoundsException e) {
+                deckFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Reads a cached deck in a single read.
+     * @return The deck, or null if it isn't cached or was built for a different catalog.
+     */
+    static int[] readDeck(File deckFile, int day, int catalogHash) {
+        long length = deckFile.length();
+        if (length < HEADER_INTS * 4 || length % 4 != 0) {
+            return null;
+        }
+        byte[] bytes = new byte[(int) length];
+        try (DataInputStream in = new DataInputStream(new FileInputStream(deckFile))) {
+            in.readFully(bytes);
+        } catch (IOException e) {
+            return null;
+        }
+
+        IntBuffer ints = ByteBuffer.wrap(bytes).asIntBuffer();
+        if (ints.get() != DECK_FILE_MAGIC || ints.get() != day || ints.get() != catalogHash
+                || ints.get() != ints.remaining()) {
+            return null;
+        }
+        int[] deck = new int[ints.remaining()];
+        ints.get(deck);
+        return deck;
+    }
+
+    /**
+     * Writes a deck to the cache. Written to a temporary file first, so a reader never sees a
+     * partial deck. loadDeck and precomputeDecks can write the same day at once, so each thread
+     * has its own temporary file.
+     */
+    static void writeDeck(File deckFile, int day, int catalogHash, int[] deck) {
+        ByteBuffer bytes = ByteBuffer.allocate((HEADER_INTS + deck.length) * 4);
+        bytes.putInt(DECK_FILE_MAGIC).putInt(day).putInt(catalogHash).putInt(deck.length);
+        bytes.asIntBuffer().put(deck);
+
+        File directory = deckFile.getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            return;
+        }
+        File tempFile = new File(deckFile.getPath() + "." + Thread.currentThread().getId()
+                + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tempFile)) {
+            out.write(bytes.array());
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        if (!tempFile.renameTo(deckFile)) {
+            tempFile.delete();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package com.example.android.classicalmusicquiz;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.DocumentsContract;
+import android.provider.DocumentsContract.Document;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lists every audio file in a document tree the user picked with ACTION_OPEN_DOCUMENT_TREE, by
+ * walking it one child query per directory. The app needs no storage permission, only the
+ * persisted grant on the tree, and the catalog gets content:// URIs the player can open.
+ */
+class DocumentTreeTrackSource implements MusicLibraryImporter.TrackSource {
+
+    private static final String[] COLUMNS = {Document.COLUMN_DOCUMENT_ID,
+            Document.COLUMN_DISPLAY_NAME, Document.COLUMN_MIME_TYPE,
+            Document.COLUMN_LAST_MODIFIED, Document.COLUMN_SIZE};
+
+    private final ContentResolver mResolver;
+    private final Uri mTreeUri;
+
+    /**
+     * @param resolver The content resolver to query the tree with.
+     * @param treeUri The tree URI returned by ACTION_OPEN_DOCUMENT_TREE.
+     */
+    DocumentTreeTrackSource(ContentResolver resolver, Uri treeUri) {
+        mResolver = resolver;
+        mTreeUri = treeUri;
+    }
+
+    @Override
+    public List<MusicLibraryImporter.Track> listTracks() throws IOException {
+        ArrayList<MusicLibraryImporter.Track> tracks = new ArrayList<>();
+        ArrayDeque<String> directories = new ArrayDeque<>();
+        directories.push(DocumentsContract.getTreeDocumentId(mTreeUri));
+        while (!directories.isEmpty()) {
+            Uri children = DocumentsContract.buildChildDocumentsUriUsingTree(mTreeUri,
+                    directories.pop());
+            try (Cursor cursor = mResolver.query(children, COLUMNS, null, null, null)) {
+                if (cursor == null) {
+                    continue;
+                }
+                while (cursor.moveToNext()) {
+                    String documentID = cursor.getString(0);
+                    String name = cursor.getString(1);
+                    String mimeType = cursor.getString(2);
+                    if (Document.MIME_TYPE_DIR.equals(mimeType)) {
+                        if (name == null || !name.startsWith(".")) {
+                            directories.push(documentID);
+                        }
+                    } else if (isAudio(name, mimeType)) {
+                        tracks.add(new MusicLibraryImporter.Track(
+                                DocumentsContract.buildDocumentUriUsingTree(mTreeUri, documentID)
+                                        .toString(),
+                                name, cursor.isNull(3) ? 0 : cursor.getLong(3),
+                                cursor.isNull(4) ? 0 : cursor.getLong(4)));
+                    }
+                }
+            } catch (SecurityException e) {
+                throw new IOException("No access to " + mTreeUri, e);
+            }
+        }
+        return tracks;
+    }
+
+    private static boolean isAudio(String name, String mimeType) {
+        return (mimeType != null && mimeType.startsWith("audio/"))
+                || (name != null && MusicLibraryImporter.isAudioFile(name));
+    }
+}
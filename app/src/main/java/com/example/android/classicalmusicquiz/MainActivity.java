@@ -16,21 +16,57 @@
 
 package com.example.android.classicalmusicquiz;
 
+import android.content.Context;
 import android.content.Intent;
+import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.view.View;
 import android.widget.TextView;
+import android.widget.Toast;
 
+import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
 
 import com.example.android.classicalmusicquiz.databinding.ActivityMainBinding;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 @SuppressWarnings("FieldCanBeLocal")
 public class MainActivity extends AppCompatActivity {
 
 
     private static final String GAME_FINISHED = "game_finished";
+    private static final String MAX_SCORE = "max_score";
+    private static final int LEADERBOARD_SIZE = 5;
+    private static final int OPEN_LIBRARY_REQUEST = 1;
+    private static final int IMPORT_THREADS =
+            Math.min(4, Runtime.getRuntime().availableProcessors());
+    private static final String LIBRARY_INDEX_FILE = "library.index";
+    private static final String LIBRARY_CATALOG_FILE = "library.exolist.json";
+    private static final ExecutorService sImportExecutor = Executors.newSingleThreadExecutor();
+    // Reading the catalog parses the bundled samples the first time, so it's kept off the main
+    // thread.
+    private static final ExecutorService sCatalogExecutor = Executors.newSingleThreadExecutor();
+
+    // The leaderboards the mode button cycles through, and the button label for each.
+    private static final int LEADERBOARD_CLASSIC = 0;
+    private static final int LEADERBOARD_SPEED_ROUND = 1;
+    private static final int LEADERBOARD_DAILY_CHALLENGE = 2;
+    private static final int[] LEADERBOARD_LABELS = {R.string.leaderboard_classic,
+            R.string.speed_round, R.string.daily_challenge};
+
 	private ActivityMainBinding binding;
+    private int mLeaderboard = LEADERBOARD_CLASSIC;
+    private int mLeaderboardRank;
+    private ScoreStore.Entry mLeaderboardLast;
+    // Bumped whenever the leaderboard is reloaded, so a page for an earlier mode is dropped.
+    private int mLeaderboardGeneration;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -38,20 +74,44 @@ public class MainActivity extends AppCompatActivity {
 		binding = ActivityMainBinding.inflate(getLayoutInflater());
         setContentView(binding.getRoot());
 
-        TextView highScoreTextView = findViewById(R.id.highscoreText);
+        // The max score depends on the catalog, so the scores are shown once it's loaded.
+        final Context context = getApplicationContext();
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+        sCatalogExecutor.execute(() -> {
+            final int maxScore = Sample.getAllSampleIDs(context).size() - 1;
+            mainHandler.post(() -> showScores(maxScore));
+        });
 
-        // Get the high and max score.
-        int highScore = QuizUtils.getHighScore(this);
-        int maxScore = Sample.getAllSampleIDs(this).size() - 1;
+        // Pick up user catalogs, now and whenever they change.
+        UserCatalogWatcher.start(this);
+
+        // Get the next few daily challenges ready in the background.
+        DailyChallenge.precomputeDecks(this);
+
+        // Load the first page of the leaderboard in the background.
+        loadLeaderboard(null);
+    }
+
+    /**
+     * Shows the high score, and the result of the game that just finished, if any.
+     * @param maxScore The max score of a classic game on the current catalog.
+     */
+    private void showScores(int maxScore) {
+        if (isDestroyed()) {
+            return;
+        }
+        TextView highScoreTextView = findViewById(R.id.highscoreText);
 
         // Set the high score text.
+        int highScore = QuizUtils.getHighScore(this);
         String highScoreText = getString(R.string.high_score, highScore, maxScore);
         highScoreTextView.setText(highScoreText);
 
         // If the game is over, show the game finished UI.
         if(getIntent().hasExtra(GAME_FINISHED)){
             Integer yourScore = QuizUtils.getCurrentScore(this);
-            String yourScoreText = getString(R.string.score_result, yourScore, maxScore);
+            String yourScoreText = getString(R.string.score_result, yourScore,
+                    getIntent().getIntExtra(MAX_SCORE, maxScore));
             binding.resultScore.setText(yourScoreText);
 
             binding.gameResult.setVisibility(View.VISIBLE);
@@ -59,6 +119,89 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    /**
+     * Loads a page of the selected leaderboard in the background.
+     * @param after The last entry shown, or null for the first page.
+     */
+    private void loadLeaderboard(final ScoreStore.Entry after) {
+        final int leaderboard = mLeaderboard;
+        final int generation = ++mLeaderboardGeneration;
+        final Context context = getApplicationContext();
+        binding.leaderboardNextButton.setEnabled(false);
+        sCatalogExecutor.execute(() -> {
+            String catalog;
+            String mode;
+            switch (leaderboard) {
+                case LEADERBOARD_SPEED_ROUND:
+                    catalog = Sample.getCatalog(context).getKey();
+                    mode = ScoreStore.MODE_SPEED_ROUND;
+                    break;
+                case LEADERBOARD_DAILY_CHALLENGE:
+                    // Daily challenges are always played on the bundled samples.
+                    catalog = ScoreStore.CATALOG_BUNDLED;
+                    mode = DailyChallenge.getMode(DailyChallenge.today());
+                    break;
+                default:
+                    catalog = Sample.getCatalog(context).getKey();
+                    mode = ScoreStore.MODE_CLASSIC;
+                    break;
+            }
+            ScoreStore.getInstance(context).getTopScores(catalog, mode, after, LEADERBOARD_SIZE,
+                    entries -> {
+                        if (generation == mLeaderboardGeneration) {
+                            showLeaderboard(entries, after == null);
+                        }
+                    });
+        });
+    }
+
+    /**
+     * Shows a page of top scores below the high score.
+     * @param entries The page of top scores, best first.
+     * @param firstPage Whether this is the first page of the leaderboard.
+     */
+    private void showLeaderboard(List<ScoreStore.Entry> entries, boolean firstPage) {
+        if (firstPage) {
+            mLeaderboardRank = 0;
+        }
+        StringBuilder leaderboard = new StringBuilder(getString(R.string.leaderboard_title));
+        if (entries.isEmpty()) {
+            leaderboard.append('\n').append(getString(R.string.leaderboard_empty));
+        }
+        for (ScoreStore.Entry entry : entries) {
+            leaderboard.append('\n').append(getString(R.string.leaderboard_entry,
+                    ++mLeaderboardRank, entry.mScore, entry.mMaxScore));
+        }
+        if (!entries.isEmpty()) {
+            mLeaderboardLast = entries.get(entries.size() - 1);
+        }
+        binding.leaderboardText.setText(leaderboard);
+        binding.leaderboardText.setVisibility(View.VISIBLE);
+        binding.leaderboardButtons.setVisibility(View.VISIBLE);
+        binding.leaderboardModeButton.setText(LEADERBOARD_LABELS[mLeaderboard]);
+        // A short page is the last one.
+        binding.leaderboardNextButton.setEnabled(entries.size() == LEADERBOARD_SIZE);
+    }
+
+    /**
+     * The OnClick method for the leaderboard mode button that switches to the next game mode's
+     * leaderboard.
+     * @param view The leaderboard mode button.
+     */
+    public void nextLeaderboardMode(View view) {
+        mLeaderboard = (mLeaderboard + 1) % LEADERBOARD_LABELS.length;
+        mLeaderboardLast = null;
+        loadLeaderboard(null);
+    }
+
+    /**
+     * The OnClick method for the leaderboard next button that shows the next page of scores.
+     * @param view The leaderboard next button.
+     */
+    public void nextLeaderboardPage(View view) {
+        loadLeaderboard(mLeaderboardLast);
+    }
+
 
     /**
      * The OnClick method for the New Game button that starts a new game.
@@ -68,4 +211,99 @@ public class MainActivity extends AppCompatActivity {
         Intent quizIntent = new Intent(this, QuizActivity.class);
         startActivity(quizIntent);
     }
+
+    /**
+     * The OnClick method for the Speed Round button that starts a game scored by how quickly
+     * each answer is given.
+     * @param view The Speed Round button.
+     */
+    public void speedRound(View view) {
+        Intent quizIntent = new Intent(this, QuizActivity.class);
+        quizIntent.putExtra(QuizActivity.SPEED_ROUND_KEY, true);
+        startActivity(quizIntent);
+    }
+
+    /**
+     * The OnClick method for the Practice button that opens the practice mode search.
+     * @param view The Practice button.
+     */
+    public void practice(View view) {
+        startActivity(new Intent(this, PracticeActivity.class));
+    }
+
+    /**
+     * The OnClick method for the Daily Challenge button that starts today's challenge.
+     * @param view The Daily Challenge button.
+     */
+    public void dailyChallenge(final View view) {
+        final int day = DailyChallenge.today();
+        // The deck may need a disk read or a build, so it's loaded off the main thread and
+        // handed to the quiz with the intent.
+        view.setEnabled(false);
+        DailyChallenge.loadDeck(this, day, deck -> {
+            view.setEnabled(true);
+            if (isFinishing() || isDestroyed()) {
+                return;
+            }
+            Intent quizIntent = new Intent(this, QuizActivity.class);
+            quizIntent.putExtra(QuizActivity.DAILY_CHALLENGE_KEY, day);
+            quizIntent.putExtra(QuizActivity.DAILY_CHALLENGE_DECK_KEY, deck);
+            startActivity(quizIntent);
+        });
+    }
+
+    /**
+     * The OnClick method for the Import button that lets the user pick a music folder to add to
+     * the quiz.
+     * @param view The Import button.
+     */
+    public void importLibrary(View view) {
+        startActivityForResult(new Intent(Intent.ACTION_OPEN_DOCUMENT_TREE), OPEN_LIBRARY_REQUEST);
+    }
+
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, @Nullable Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        if (requestCode != OPEN_LIBRARY_REQUEST || resultCode != RESULT_OK || data == null
+                || data.getData() == null) {
+            return;
+        }
+        Uri treeUri = data.getData();
+        // Keep read access after a restart, so the quiz can still play the imported pieces.
+        getContentResolver().takePersistableUriPermission(treeUri,
+                Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        startLibraryImport(treeUri);
+    }
+
+    /**
+     * Walks the picked folder in the background and writes its catalog to the user catalog
+     * directory, where the catalog watcher picks it up.
+     * @param treeUri The document tree the user picked.
+     */
+    private void startLibraryImport(final Uri treeUri) {
+        final Context context = getApplicationContext();
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+        Toast.makeText(context, R.string.import_started, Toast.LENGTH_SHORT).show();
+
+        sImportExecutor.execute(() -> {
+            MusicLibraryImporter importer = new MusicLibraryImporter(
+                    new MediaMetadataExtractor(context), IMPORT_THREADS);
+            String message;
+            try {
+                MusicLibraryImporter.Result result = importer.importLibrary(
+                        new DocumentTreeTrackSource(context.getContentResolver(), treeUri),
+                        new File(context.getFilesDir(), LIBRARY_INDEX_FILE),
+                        new File(UserCatalogWatcher.getCatalogDirectory(context),
+                                LIBRARY_CATALOG_FILE));
+                message = context.getString(R.string.import_finished, result.mScanned,
+                        result.mExtracted);
+            } catch (IOException e) {
+                e.printStackTrace();
+                message = context.getString(R.string.import_failed);
+            }
+            final String toastText = message;
+            mainHandler.post(() ->
+                    Toast.makeText(context, toastText, Toast.LENGTH_LONG).show());
+        });
+    }
 }
@@ -0,0 +1,64 @@
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package com.example.android.classicalmusicquiz;
+
+import android.content.Context;
+import android.media.MediaMetadataRetriever;
+import android.net.Uri;
+
+import java.io.IOException;
+
+/**
+ * Reads title, composer and duration with the platform's MediaMetadataRetriever. Files without a
+ * composer tag use the artist instead. Each call uses its own retriever, so it can run on
+ * several import workers at once.
+ */
+class MediaMetadataExtractor implements MusicLibraryImporter.MetadataExtractor {
+
+    private final Context mContext;
+
+    /**
+     * @param context The application context, used to open content:// URIs.
+     */
+    MediaMetadataExtractor(Context context) {
+        mContext = context;
+    }
+
+    @Override
+    public MusicLibraryImporter.Metadata extract(MusicLibraryImporter.Track track)
+            throws IOException {
+        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+        try {
+            retriever.setDataSource(mContext, Uri.parse(track.mUri));
+            String composer = retriever.extractMetadata(
+                    MediaMetadataRetriever.METADATA_KEY_COMPOSER);
+            if (composer == null || composer.trim().isEmpty()) {
+                composer = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_ARTIST);
+            }
+            String duration = retriever.extractMetadata(
+                    MediaMetadataRetriever.METADATA_KEY_DURATION);
+            return new MusicLibraryImporter.Metadata(
+                    retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_TITLE),
+                    composer,
+                    duration != null ? Long.parseLong(duration) : 0);
+        } catch (IllegalArgumentException | SecurityException e) {
+            throw new IOException("Can't read metadata from " + track.mUri, e);
+        } finally {
+            retriever.release();
+        }
+    }
+}
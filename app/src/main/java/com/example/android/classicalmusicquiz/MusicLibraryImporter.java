@@ -0,0 +1,446 @@
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package com.example.android.classicalmusicquiz;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Builds a catalog that Sample can load from a collection of audio files, such as a document
+ * tree the user picked. Metadata is extracted in parallel on a bounded pool of workers, and an
+ * index of each file's modification time and size lets a re-scan skip every file that hasn't
+ * changed.
+ *
+ * Sample IDs are kept in the index, so a file keeps its ID across scans. Imported IDs start at
+ * FIRST_SAMPLE_ID to stay clear of the bundled catalog, and the index remembers the next free
+ * ID, so the ID of a removed file is never given to another one.
+ */
+class MusicLibraryImporter {
+
+    static final int FIRST_SAMPLE_ID = 100000;
+    // Bumped when indexed metadata changes meaning, so old indexes are scanned again in full.
+    private static final int INDEX_MAGIC = 0x4d4c4933;
+    private static final String[] AUDIO_EXTENSIONS =
+            {".mp3", ".m4a", ".aac", ".ogg", ".opus", ".flac", ".wav"};
+
+    /**
+     * Lists the audio files to import.
+     */
+    interface TrackSource {
+        List<Track> listTracks() throws IOException;
+    }
+
+    /**
+     * Reads the metadata of a single audio file. Called from several worker threads at once.
+     */
+    interface MetadataExtractor {
+        Metadata extract(Track track) throws IOException;
+    }
+
+    /**
+     * A single audio file found by a TrackSource.
+     */
+    static class Track {
+        final String mUri;
+        final String mName;
+        final long mLastModified;
+        final long mLength;
+
+        /**
+         * @param uri The URI the catalog plays the file from. It also identifies the file
+         *            across scans.
+         * @param name The file name, used as the title when the file has none.
+         * @param lastModified The modification time, in any unit that changes with the file.
+         * @param length The size in bytes.
+         */
+        Track(String uri, String name, long lastModified, long length) {
+            mUri = uri;
+            mName = name;
+            mLastModified = lastModified;
+            mLength = length;
+        }
+    }
+
+    /**
+     * The metadata of a single audio file. Any field may be missing.
+     */
+    static class Metadata {
+        final String mTitle;
+        final String mComposer;
+        final long mDurationMs;
+
+        Metadata(String title, String composer, long durationMs) {
+            mTitle = title;
+            mComposer = composer;
+            mDurationMs = durationMs;
+        }
+    }
+
+    /**
+     * What an import did.
+     */
+    static class Result {
+        final int mScanned;
+        final int mExtracted;
+        final int mRemoved;
+        final boolean mCatalogWritten;
+
+        Result(int scanned, int extracted, int removed, boolean catalogWritten) {
+            mScanned = scanned;
+            mExtracted = extracted;
+            mRemoved = removed;
+            mCatalogWritten = catalogWritten;
+        }
+    }
+
+    private final MetadataExtractor mExtractor;
+    private final int mThreads;
+
+    /**
+     * @param extractor Reads the metadata of changed files.
+     * @param threads The most files to extract metadata from at once.
+     */
+    MusicLibraryImporter(MetadataExtractor extractor, int threads) {
+        mExtractor = extractor;
+        mThreads = Math.max(1, threads);
+    }
+
+    /**
+     * Scans the audio files of a source and writes their catalog, extracting metadata only from
+     * files that are new or changed since the last scan.
+     * @param source The audio files to import.
+     * @param indexFile Where the scan index is kept between scans.
+     * @param catalogFile The .exolist.json catalog to write. Left untouched if nothing changed.
+     * @return What the import did.
+     * @throws IOException Exception thrown if the source can't be listed, or the index or
+     * catalog can't be written.
+     */
+    Result importLibrary(TrackSource source, File indexFile, File catalogFile)
+            throws IOException {
+        HashMap<String, Entry> previous = new HashMap<>();
+        int nextSampleID = readIndex(indexFile, previous);
+        // New files are numbered in URI order, so IDs don't depend on the listing order.
+        List<Track> tracks = new ArrayList<>(source.listTracks());
+        Collections.sort(tracks, (a, b) -> a.mUri.compareTo(b.mUri));
+
+        ArrayList<Entry> entries = new ArrayList<>(tracks.size());
+        ArrayList<Entry> changed = new ArrayList<>();
+        int stillPresent = 0;
+        for (Track track : tracks) {
+            Entry old = previous.get(track.mUri);
+            if (old != null) {
+                stillPresent++;
+            }
+            if (old != null && old.mLastModified == track.mLastModified
+                    && old.mLength == track.mLength) {
+                entries.add(old);
+                continue;
+            }
+            Entry entry = new Entry(track.mUri, old != null ? old.mSampleID : nextSampleID++,
+                    track.mLastModified, track.mLength);
+            entry.mTrack = track;
+            entries.add(entry);
+            changed.add(entry);
+        }
+
+        extractAll(changed);
+
+        int removed = previous.size() - stillPresent;
+        boolean catalogWritten = false;
+        if (!changed.isEmpty() || removed > 0 || !catalogFile.exists()) {
+            writeCatalog(catalogFile, entries);
+            writeIndex(indexFile, nextSampleID, entries);
+            catalogWritten = true;
+        }
+        return new Result(tracks.size(), changed.size(), removed, catalogWritten);
+    }
+
+    /**
+     * Extracts metadata for the changed files on the worker pool. A file whose metadata can't
+     * be read still gets an entry, with its name as the title and composer.
+     */
+    private void extractAll(List<Entry> changed) throws IOException {
+        if (changed.isEmpty()) {
+            return;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(mThreads, changed.size()));
+        try {
+            CompletionService<Void> completion = new ExecutorCompletionService<>(pool);
+            for (final Entry entry : changed) {
+                completion.submit(() -> {
+                    Metadata metadata;
+                    try {
+                        metadata = mExtractor.extract(entry.mTrack);
+                    } catch (IOException | RuntimeException e) {
+                        metadata = null;
+                    }
+                    entry.setMetadata(metadata);
+                    return null;
+                });
+            }
+            for (int i = 0; i < changed.size(); i++) {
+                completion.take().get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Lists every audio file under a directory of the local file system, skipping hidden
+     * directories.
+     */
+    static final class DirectoryTrackSource implements TrackSource {
+        private final File mRoot;
+
+        DirectoryTrackSource(File root) {
+            mRoot = root;
+        }
+
+        @Override
+        public List<Track> listTracks() {
+            ArrayList<Track> tracks = new ArrayList<>();
+            ArrayDeque<File> directories = new ArrayDeque<>();
+            directories.push(mRoot);
+            while (!directories.isEmpty()) {
+                File[] children = directories.pop().listFiles();
+                if (children == null) {
+                    continue;
+                }
+                for (File child : children) {
+                    if (child.isDirectory()) {
+                        if (!child.isHidden()) {
+                            directories.push(child);
+                        }
+                    } else if (isAudioFile(child.getName())) {
+                        tracks.add(new Track(child.toURI().toString(), child.getName(),
+                                child.lastModified(), child.length()));
+                    }
+                }
+            }
+            return tracks;
+        }
+    }
+
+    /**
+     * @param name A file name.
+     * @return true if the name has the extension of an audio format the player can read.
+     */
+    static boolean isAudioFile(String name) {
+        String lowerCaseName = name.toLowerCase(Locale.US);
+        for (String extension : AUDIO_EXTENSIONS) {
+            if (lowerCaseName.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads the index of the last scan.
+     * @param entries Receives the indexed files by URI.
+     * @return The next free sample ID.
+     */
+    private static int readIndex(File indexFile, HashMap<String, Entry> entries) {
+        if (!indexFile.exists()) {
+            return FIRST_SAMPLE_ID;
+        }
+        int nextSampleID = FIRST_SAMPLE_ID;
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != INDEX_MAGIC) {
+                return FIRST_SAMPLE_ID;
+            }
+            nextSampleID = Math.max(nextSampleID, in.readInt());
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Entry entry = new Entry(in.readUTF(), in.readInt(), in.readLong(),
+                        in.readLong());
+                entry.mTitle = in.readUTF();
+                entry.mComposer = in.readUTF();
+                entry.mDurationMs = in.readLong();
+                entries.put(entry.mUri, entry);
+                nextSampleID = Math.max(nextSampleID, entry.mSampleID + 1);
+            }
+        } catch (IOException e) {
+            // A damaged index only costs a full re-scan.
+            entries.clear();
+        }
+        return nextSampleID;
+    }
+
+    private static void writeIndex(File indexFile, int nextSampleID, List<Entry> entries)
+            throws IOException {
+        File tempFile = createTempFile(indexFile);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(nextSampleID);
+            out.writeInt(entries.size());
+            for (Entry entry : entries) {
+                out.writeUTF(entry.mUri);
+                out.writeInt(entry.mSampleID);
+                out.writeLong(entry.mLastModified);
+                out.writeLong(entry.mLength);
+                out.writeUTF(entry.mTitle);
+                out.writeUTF(entry.mComposer);
+                out.writeLong(entry.mDurationMs);
+            }
+        }
+        replace(tempFile, indexFile);
+    }
+
+    /**
+     * Writes the catalog in the same format as the bundled media.exolist.json. Written to a
+     * temporary file and renamed, so a watcher never sees a partial catalog.
+     */
+    private static void writeCatalog(File catalogFile, List<Entry> entries) throws IOException {
+        File tempFile = createTempFile(catalogFile);
+        try (Writer out = new OutputStreamWriter(
+                new BufferedOutputStream(new FileOutputStream(tempFile)),
+                StandardCharsets.UTF_8)) {
+            out.write("[\n");
+            for (int i = 0; i < entries.size(); i++) {
+                Entry entry = entries.get(i);
+                out.write("  {\n    \"name\": ");
+                writeString(out, entry.mTitle);
+                out.write(",\n    \"id\": ");
+                out.write(Integer.toString(entry.mSampleID));
+                out.write(",\n    \"uri\": ");
+                writeString(out, entry.mUri);
+                out.write(",\n    \"composer\": ");
+                writeString(out, entry.mComposer);
+                out.write(",\n    \"duration\": ");
+                out.write(Long.toString(entry.mDurationMs));
+                out.write(i < entries.size() - 1 ? "\n  },\n" : "\n  }\n");
+            }
+            out.write("]\n");
+        }
+        replace(tempFile, catalogFile);
+    }
+
+    private static void writeString(Writer out, String value) throws IOException {
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.write("\\\"");
+                    break;
+                case '\\':
+                    out.write("\\\\");
+                    break;
+                case '\n':
+                    out.write("\\n");
+                    break;
+                case '\r':
+                    out.write("\\r");
+                    break;
+                case '\t':
+                    out.write("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.write(String.format(Locale.US, "\\u%04x", (int) c));
+                    } else {
+                        out.write(c);
+                    }
+            }
+        }
+        out.write('"');
+    }
+
+    private static File createTempFile(File target) throws IOException {
+        File directory = target.getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can't create " + directory);
+        }
+        return new File(target.getPath() + ".tmp");
+    }
+
+    private static void replace(File source, File target) throws IOException {
+        if (!source.renameTo(target)) {
+            source.delete();
+            throw new IOException("Can't write " + target);
+        }
+    }
+
+    /**
+     * One audio file as recorded in the index.
+     */
+    private static final class Entry {
+        final String mUri;
+        final int mSampleID;
+        final long mLastModified;
+        final long mLength;
+        String mTitle = "";
+        String mComposer = "";
+        long mDurationMs;
+        // The file this entry was scanned from, while its metadata is being extracted.
+        Track mTrack;
+
+        Entry(String uri, int sampleID, long lastModified, long length) {
+            mUri = uri;
+            mSampleID = sampleID;
+            mLastModified = lastModified;
+            mLength = length;
+        }
+
+        void setMetadata(Metadata metadata) {
+            String fileName = mTrack.mName != null ? mTrack.mName : "";
+            int extension = fileName.lastIndexOf('.');
+            String displayName = extension > 0 ? fileName.substring(0, extension) : fileName;
+
+            mTitle = metadata != null && !isEmpty(metadata.mTitle)
+                    ? metadata.mTitle : displayName;
+            // The quiz shows the composer on an answer button, so an untagged file is still
+            // told apart by its name rather than a blank button.
+            mComposer = metadata != null && !isEmpty(metadata.mComposer)
+                    ? metadata.mComposer : displayName;
+            mDurationMs = metadata != null ? metadata.mDurationMs : 0;
+        }
+
+        private static boolean isEmpty(String value) {
+            return value == null || value.trim().isEmpty();
+        }
+    }
+}
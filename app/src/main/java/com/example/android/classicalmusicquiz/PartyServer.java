@@ -0,0 +1,416 @@
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package com.example.android.classicalmusicquiz;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Game server for party mode. A single thread runs a non-blocking event loop on a Selector that
+ * accepts players, broadcasts each question to all of them and scores their answers by
+ * correctness and speed.
+ *
+ * Only the server side exists so far. Nothing in the app starts one, as there is no host screen
+ * yet, so the app doesn't ask for the INTERNET permission a listening socket needs. Whoever adds
+ * the host entry point adds the permission with it.
+ *
+ * All frames are big-endian:
+ * <ul>
+ *     <li>MSG_WELCOME (server to player): type, player ID.</li>
+ *     <li>MSG_QUESTION (server to player): type, question index, candidate count, candidate
+ *     sample IDs. The answer is never sent, so a player can't read it off the wire; the
+ *     server keeps it for scoring.</li>
+ *     <li>MSG_ANSWER (player to server): type, question index, answered sample ID.</li>
+ *     <li>MSG_SCORE (server to player): type, question index, points earned, total score.</li>
+ * </ul>
+ */
+class PartyServer {
+
+    static final byte MSG_WELCOME = 1;
+    static final byte MSG_QUESTION = 2;
+    static final byte MSG_ANSWER = 3;
+    static final byte MSG_SCORE = 4;
+
+    static final int WELCOME_FRAME_SIZE = 5;
+    static final int QUESTION_FRAME_HEADER_SIZE = 6;
+    static final int ANSWER_FRAME_SIZE = 9;
+    static final int SCORE_FRAME_SIZE = 13;
+
+    private static final int READ_BUFFER_SIZE = 64;
+    private static final int MAX_PENDING_FRAMES = 32;
+
+    /**
+     * Receives answers as they are scored. Called on the server thread.
+     */
+    interface Listener {
+        void onAnswer(int playerID, int questionIndex, int answerSampleID, long responseMillis,
+                      int points);
+    }
+
+    private final int mPort;
+    private final long mAnswerWindowMillis;
+    private final Listener mListener;
+    private final ConcurrentLinkedQueue<Question> mPendingQuestions = new ConcurrentLinkedQueue<>();
+    private final ConcurrentHashMap<Integer, Integer> mScores = new ConcurrentHashMap<>();
+    private final HashMap<Integer, Player> mPlayers = new HashMap<>();
+
+    private Selector mSelector;
+    private ServerSocketChannel mServerChannel;
+    private Thread mThread;
+    private volatile boolean mRunning;
+    private Question mCurrentQuestion;
+    private int mNextPlayerID;
+    private int mNextQuestionIndex;
+
+    /**
+     * Creates a server that has not started listening yet.
+     * @param port The port to listen on, or 0 for any free port.
+     * @param answerWindowMillis The time after which a correct answer earns the minimum score.
+     * @param listener Receives scored answers, may be null.
+     */
+    PartyServer(int port, long answerWindowMillis, Listener listener) {
+        mPort = port;
+        mAnswerWindowMillis = answerWindowMillis;
+        mListener = listener;
+    }
+
+    /**
+     * Binds the server socket and starts the event loop thread.
+     * @throws IOException Exception thrown if the port can't be bound.
+     */
+    synchronized void start() throws IOException {
+        if (mRunning) {
+            return;
+        }
+        mSelector = Selector.open();
+        mServerChannel = ServerSocketChannel.open();
+        mServerChannel.configureBlocking(false);
+        mServerChannel.socket().bind(new InetSocketAddress(mPort));
+        mServerChannel.register(mSelector, SelectionKey.OP_ACCEPT);
+
+        mRunning = true;
+        mThread = new Thread(this::runLoop, "PartyServer");
+        mThread.start();
+    }
+
+    /**
+     * Stops the event loop and disconnects all players.
+     */
+    synchronized void stop() {
+        if (!mRunning) {
+            return;
+        }
+        mRunning = false;
+        mSelector.wakeup();
+        try {
+            mThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return The port the server is listening on.
+     */
+    int getLocalPort() {
+        return mServerChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Queues a question to be sent to every connected player. The frame is encoded once and
+     * shared by all players. Answers to the previous question are no longer accepted once the
+     * event loop picks this one up.
+     * @param answerSampleID The ID of the sample being played.
+     * @param questionSampleIDs The IDs of the possible answers, as from
+     *                          QuizUtils.generateQuestion.
+     * @return The index of the question.
+     * @throws IllegalStateException If the server isn't running.
+     */
+    int broadcastQuestion(int answerSampleID, List<Integer> questionSampleIDs) {
+        int questionIndex;
+        synchronized (this) {
+            if (!mRunning) {
+                throw new IllegalStateException("The party server isn't running");
+            }
+            questionIndex = mNextQuestionIndex++;
+        }
+        ByteBuffer frame = ByteBuffer.allocate(getQuestionFrameSize(questionSampleIDs.size()));
+        frame.put(MSG_QUESTION);
+        frame.putInt(questionIndex);
+        frame.put((byte) questionSampleIDs.size());
+        for (int sampleID : questionSampleIDs) {
+            frame.putInt(sampleID);
+        }
+        frame.flip();
+
+        mPendingQuestions.add(new Question(questionIndex, answerSampleID,
+                frame.asReadOnlyBuffer()));
+        mSelector.wakeup();
+        return questionIndex;
+    }
+
+    /**
+     * @param candidateCount The number of possible answers to the question.
+     * @return The size of a MSG_QUESTION frame in bytes.
+     */
+    static int getQuestionFrameSize(int candidateCount) {
+        return QUESTION_FRAME_HEADER_SIZE + 4 * candidateCount;
+    }
+
+    /**
+     * @return A snapshot of the total score of every player who has answered, by player ID.
+     */
+    Map<Integer, Integer> getScores() {
+        return Collections.unmodifiableMap(new HashMap<>(mScores));
+    }
+
+    private void runLoop() {
+        try {
+            while (mRunning) {
+                mSelector.select();
+                dispatchPendingQuestions();
+
+                Iterator<SelectionKey> keys = mSelector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    try {
+                        if (key.isAcceptable()) {
+                            acceptPlayers();
+                            continue;
+                        }
+                        if (key.isReadable()) {
+                            readAnswers(key);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            flushWrites(key);
+                        }
+                    } catch (IOException e) {
+                        if (key.attachment() instanceof Player) {
+                            disconnect(key);
+                        } else {
+                            e.printStackTrace();
+                        }
+                    }
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            e.printStackTrace();
+        } finally {
+            closeAll();
+        }
+    }
+
+    private void acceptPlayers() throws IOException {
+        SocketChannel channel;
+        while ((channel = mServerChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            Player player = new Player(mNextPlayerID++, channel);
+            SelectionKey key = channel.register(mSelector, SelectionKey.OP_READ, player);
+            mPlayers.put(player.mPlayerID, player);
+
+            ByteBuffer welcome = ByteBuffer.allocate(WELCOME_FRAME_SIZE);
+            welcome.put(MSG_WELCOME).putInt(player.mPlayerID).flip();
+            enqueue(key, welcome);
+        }
+    }
+
+    /**
+     * Sends every queued question to all players. Each player gets a read-only view of the same
+     * frame, and the write is attempted immediately so most players need no extra select round.
+     */
+    private void dispatchPendingQuestions() {
+        Question question;
+        while ((question = mPendingQuestions.poll()) != null) {
+            mCurrentQuestion = question;
+            for (SelectionKey key : mSelector.keys()) {
+                if (key.isValid() && key.attachment() instanceof Player) {
+                    Player player = (Player) key.attachment();
+                    player.mQuestionFrame = question.mFrame.duplicate();
+                    player.mQuestionStartNanos = -1;
+                    enqueue(key, player.mQuestionFrame);
+                }
+            }
+        }
+    }
+
+    private void readAnswers(SelectionKey key) throws IOException {
+        Player player = (Player) key.attachment();
+        ByteBuffer buffer = player.mReadBuffer;
+        if (player.mChannel.read(buffer) < 0) {
+            disconnect(key);
+            return;
+        }
+        long receivedNanos = System.nanoTime();
+
+        buffer.flip();
+        while (buffer.remaining() >= ANSWER_FRAME_SIZE) {
+            if (buffer.get() != MSG_ANSWER) {
+                disconnect(key);
+                return;
+            }
+            int questionIndex = buffer.getInt();
+            int answerSampleID = buffer.getInt();
+            scoreAnswer(key, player, questionIndex, answerSampleID, receivedNanos);
+        }
+        buffer.compact();
+    }
+
+    /**
+     * Scores a player's first answer to the current question. Answers to older questions,
+     * repeated answers and answers from players the question hasn't fully reached are ignored.
+     * The response time runs from when the player's own copy of the question was written, so a
+     * player behind a slow link isn't charged for the time their frame sat in the queue.
+     */
+    private void scoreAnswer(SelectionKey key, Player player, int questionIndex,
+                             int answerSampleID, long receivedNanos) {
+        Question question = mCurrentQuestion;
+        if (question == null || question.mQuestionIndex != questionIndex
+                || player.mQuestionStartNanos < 0
+                || player.mLastAnsweredQuestion == questionIndex) {
+            return;
+        }
+        player.mLastAnsweredQuestion = questionIndex;
+
+        long responseMillis = (receivedNanos - player.mQuestionStartNanos) / 1000000L;
+        int points = QuizUtils.getSpeedScore(question.mAnswerSampleID, answerSampleID,
+                responseMillis, mAnswerWindowMillis);
+        int total = mScores.merge(player.mPlayerID, points, Integer::sum);
+
+        ByteBuffer score = ByteBuffer.allocate(SCORE_FRAME_SIZE);
+        score.put(MSG_SCORE).putInt(questionIndex).putInt(points).putInt(total).flip();
+        enqueue(key, score);
+
+        if (mListener != null) {
+            mListener.onAnswer(player.mPlayerID, questionIndex, answerSampleID, responseMillis,
+                    points);
+        }
+    }
+
+    private void enqueue(SelectionKey key, ByteBuffer frame) {
+        if (!key.isValid()) {
+            return;
+        }
+        Player player = (Player) key.attachment();
+        if (player.mPendingWrites.size() >= MAX_PENDING_FRAMES) {
+            // The player isn't keeping up, drop them rather than buffering without bound.
+            disconnect(key);
+            return;
+        }
+        player.mPendingWrites.add(frame);
+        try {
+            flushWrites(key);
+        } catch (IOException e) {
+            disconnect(key);
+        }
+    }
+
+    private void flushWrites(SelectionKey key) throws IOException {
+        Player player = (Player) key.attachment();
+        ArrayDeque<ByteBuffer> pending = player.mPendingWrites;
+        while (!pending.isEmpty()) {
+            ByteBuffer head = pending.peek();
+            player.mChannel.write(head);
+            if (head.hasRemaining()) {
+                break;
+            }
+            pending.poll();
+            if (head == player.mQuestionFrame) {
+                player.mQuestionStartNanos = System.nanoTime();
+                player.mQuestionFrame = null;
+            }
+        }
+        key.interestOps(pending.isEmpty()
+                ? SelectionKey.OP_READ
+                : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+    }
+
+    private void disconnect(SelectionKey key) {
+        Player player = (Player) key.attachment();
+        key.cancel();
+        mPlayers.remove(player.mPlayerID);
+        try {
+            player.mChannel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void closeAll() {
+        for (Player player : mPlayers.values()) {
+            try {
+                player.mChannel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        mPlayers.clear();
+        try {
+            mServerChannel.close();
+            mSelector.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static final class Question {
+        final int mQuestionIndex;
+        final int mAnswerSampleID;
+        final ByteBuffer mFrame;
+
+        Question(int questionIndex, int answerSampleID, ByteBuffer frame) {
+            mQuestionIndex = questionIndex;
+            mAnswerSampleID = answerSampleID;
+            mFrame = frame;
+        }
+    }
+
+    private static final class Player {
+        final int mPlayerID;
+        final SocketChannel mChannel;
+        final ByteBuffer mReadBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        final ArrayDeque<ByteBuffer> mPendingWrites = new ArrayDeque<>();
+        int mLastAnsweredQuestion = -1;
+        // The player's copy of the current question while it is being written, and when its
+        // last byte went out, or -1 until then.
+        ByteBuffer mQuestionFrame;
+        long mQuestionStartNanos = -1;
+
+        Player(int playerID, SocketChannel channel) {
+            mPlayerID = playerID;
+            mChannel = channel;
+        }
+    }
+}
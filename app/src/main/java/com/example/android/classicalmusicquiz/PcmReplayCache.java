@@ -0,0 +1,262 @@
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package com.example.android.classicalmusicquiz;
+
+import android.content.Context;
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioTrack;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.DefaultRenderersFactory;
+import com.google.android.exoplayer2.Player;
+import com.google.android.exoplayer2.RenderersFactory;
+import com.google.android.exoplayer2.audio.AudioCapabilities;
+import com.google.android.exoplayer2.audio.AudioProcessor;
+import com.google.android.exoplayer2.audio.AudioSink;
+import com.google.android.exoplayer2.audio.DefaultAudioSink;
+import com.google.android.exoplayer2.audio.TeeAudioProcessor;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Keeps the decoded PCM of the opening of the current clip, so restarting the clip can play
+ * straight from memory instead of seeking back and decoding the mp3 again.
+ *
+ * Capture starts with the first flush of the audio sink after the player is created and stops
+ * at the next flush (any seek) or when the memory cap is reached. Whatever was captured is
+ * always a contiguous window from the start of the clip.
+ */
+class PcmReplayCache implements TeeAudioProcessor.AudioBufferSink {
+
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+
+    private final int mMaxBytes;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private byte[] mPcm;
+    private int mLength;
+    private int mSampleRateHz;
+    private int mChannelCount;
+    private int mEncoding;
+    private boolean mStarted;
+    private boolean mCapturing;
+    private AudioTrack mReplayTrack;
+
+    /**
+     * @param maxBytes The most PCM the cache will ever hold.
+     */
+    PcmReplayCache(int maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Creates a renderers factory whose audio sink feeds this cache.
+     * @param context The application context.
+     * @return The renderers factory to build the player with.
+     */
+    RenderersFactory createRenderersFactory(Context context) {
+        final TeeAudioProcessor teeAudioProcessor = new TeeAudioProcessor(this);
+        return new DefaultRenderersFactory(context) {
+            @Override
+            protected AudioSink buildAudioSink(Context context, boolean enableFloatOutput,
+                                               boolean enableAudioTrackPlaybackParams,
+                                               boolean enableOffload) {
+                return new DefaultAudioSink(AudioCapabilities.getCapabilities(context),
+                        new AudioProcessor[]{teeAudioProcessor});
+            }
+        };
+    }
+
+    @Override
+    public synchronized void flush(int sampleRateHz, int channelCount, int encoding) {
+        if (!mStarted || mLength == 0) {
+            // Playback is starting from the beginning of the clip.
+            mStarted = true;
+            mCapturing = true;
+            mSampleRateHz = sampleRateHz;
+            mChannelCount = channelCount;
+            mEncoding = encoding;
+            mLength = 0;
+        } else {
+            // A seek, so anything after this point isn't part of the opening window.
+            mCapturing = false;
+        }
+    }
+
+    @Override
+    public synchronized void handleBuffer(ByteBuffer buffer) {
+        if (!mCapturing) {
+            return;
+        }
+        int size = Math.min(buffer.remaining(), mMaxBytes - mLength);
+        if (mPcm == null || mLength + size > mPcm.length) {
+            int capacity = Math.max(INITIAL_CAPACITY, mPcm == null ? 0 : mPcm.length * 2);
+            capacity = Math.min(mMaxBytes, Math.max(capacity, mLength + size));
+            mPcm = mPcm == null ? new byte[capacity] : Arrays.copyOf(mPcm, capacity);
+        }
+        buffer.duplicate().get(mPcm, mLength, size);
+        mLength += size;
+        if (mLength == mMaxBytes) {
+            mCapturing = false;
+        }
+    }
+
+    /**
+     * @return The length of the cached window in milliseconds.
+     */
+    synchronized long getCachedDurationMs() {
+        int bytesPerFrame = getBytesPerFrame();
+        if (bytesPerFrame == 0 || mSampleRateHz == 0) {
+            return 0;
+        }
+        return (mLength / bytesPerFrame) * 1000L / mSampleRateHz;
+    }
+
+    /**
+     * Restarts the clip. The cached window plays from memory while the player waits, paused,
+     * at its end, and the player carries on from there when the replay finishes. A paused
+     * player, or one without a usable cache, seeks back to the start instead.
+     * @param player The player the cache was built with.
+     * @param onFinished Run on the main thread after the player has been told to carry on.
+     * @return true if the cached window is replaying.
+     */
+    synchronized boolean restart(final Player player, final Runnable onFinished) {
+        long resumePositionMs = getCachedDurationMs();
+        if (player.getPlayWhenReady() && resumePositionMs > 0 && replay(() -> {
+            player.setPlayWhenReady(true);
+            onFinished.run();
+        })) {
+            player.setPlayWhenReady(false);
+            player.seekTo(resumePositionMs);
+            return true;
+        }
+        player.seekTo(0L);
+        return false;
+    }
+
+    /**
+     * Plays the cached window from memory.
+     * @param onFinished Run on the main thread when the cached window has finished playing.
+     * @return false if nothing usable is cached, in which case nothing is played.
+     */
+    private boolean replay(final Runnable onFinished) {
+        stopReplay();
+        int bytesPerFrame = getBytesPerFrame();
+        int channelMask = mChannelCount == 1 ? AudioFormat.CHANNEL_OUT_MONO
+                : mChannelCount == 2 ? AudioFormat.CHANNEL_OUT_STEREO
+                : AudioFormat.CHANNEL_INVALID;
+        if (bytesPerFrame == 0 || channelMask == AudioFormat.CHANNEL_INVALID
+                || mLength < bytesPerFrame) {
+            return false;
+        }
+        int frames = mLength / bytesPerFrame;
+        int size = frames * bytesPerFrame;
+
+        AudioTrack track;
+        try {
+            track = new AudioTrack.Builder()
+                    .setAudioAttributes(new AudioAttributes.Builder()
+                            .setUsage(AudioAttributes.USAGE_MEDIA)
+                            .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
+                            .build())
+                    .setAudioFormat(new AudioFormat.Builder()
+                            .setEncoding(mEncoding == C.ENCODING_PCM_FLOAT
+                                    ? AudioFormat.ENCODING_PCM_FLOAT
+                                    : AudioFormat.ENCODING_PCM_16BIT)
+                            .setSampleRate(mSampleRateHz)
+                            .setChannelMask(channelMask)
+                            .build())
+                    .setTransferMode(AudioTrack.MODE_STATIC)
+                    .setBufferSizeInBytes(size)
+                    .build();
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            // The device can't play this format from a static buffer, so let the player seek.
+            return false;
+        }
+        // Only the ByteBuffer write takes float PCM. The byte[] one is for 8 and 16 bit.
+        if (track.write(ByteBuffer.wrap(mPcm, 0, size), size, AudioTrack.WRITE_BLOCKING)
+                != size) {
+            track.release();
+            return false;
+        }
+        track.setNotificationMarkerPosition(frames);
+        track.setPlaybackPositionUpdateListener(new AudioTrack.OnPlaybackPositionUpdateListener() {
+            @Override
+            public void onMarkerReached(AudioTrack audioTrack) {
+                stopReplay();
+                onFinished.run();
+            }
+
+            @Override
+            public void onPeriodicNotification(AudioTrack audioTrack) {
+            }
+        }, mMainHandler);
+        track.play();
+        mReplayTrack = track;
+        return true;
+    }
+
+    /**
+     * @return true if the cached window is playing from memory.
+     */
+    synchronized boolean isReplaying() {
+        return mReplayTrack != null;
+    }
+
+    /**
+     * Stops a replay in progress, if any.
+     * @return How far into the clip the replay had got in milliseconds, or -1 if nothing was
+     * replaying.
+     */
+    synchronized long stopReplay() {
+        if (mReplayTrack == null) {
+            return -1;
+        }
+        long positionMs = mSampleRateHz == 0 ? 0
+                : mReplayTrack.getPlaybackHeadPosition() * 1000L / mSampleRateHz;
+        mReplayTrack.release();
+        mReplayTrack = null;
+        return positionMs;
+    }
+
+    /**
+     * Stops any replay and frees the cached PCM. The next flush starts a new capture, so call
+     * this whenever the question changes.
+     */
+    synchronized void release() {
+        stopReplay();
+        mPcm = null;
+        mLength = 0;
+        mStarted = false;
+        mCapturing = false;
+    }
+
+    private int getBytesPerFrame() {
+        switch (mEncoding) {
+            case C.ENCODING_PCM_16BIT:
+                return 2 * mChannelCount;
+            case C.ENCODING_PCM_FLOAT:
+                return 4 * mChannelCount;
+            default:
+                return 0;
+        }
+    }
+}
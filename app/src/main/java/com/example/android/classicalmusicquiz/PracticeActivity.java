@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.classicalmusicquiz;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.widget.ArrayAdapter;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import com.example.android.classicalmusicquiz.databinding.ActivityPracticeBinding;
+
+import com.google.android.exoplayer2.MediaItem;
+import com.google.android.exoplayer2.SimpleExoPlayer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Practice mode: the user searches the catalog by title or composer and listens to any piece.
+ */
+public class PracticeActivity extends AppCompatActivity implements TextWatcher {
+
+    private static final int MAX_RESULTS = 50;
+    private static final ExecutorService sIndexExecutor = Executors.newSingleThreadExecutor();
+
+    private ActivityPracticeBinding binding;
+    private SampleSearchIndex mSearchIndex;
+    private String[] mLabels;
+    private final int[] mResultPositions = new int[MAX_RESULTS];
+    private final ArrayList<String> mResultLabels = new ArrayList<>(MAX_RESULTS);
+    private ArrayAdapter<String> mAdapter;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        binding = ActivityPracticeBinding.inflate(getLayoutInflater());
+        setContentView(binding.getRoot());
+
+        // Build the index and the result labels once, in the background, so opening the screen
+        // doesn't wait for a large catalog and typing only costs a lookup.
+        final Context context = getApplicationContext();
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+        sIndexExecutor.execute(() -> {
+            List<Sample> samples = Sample.getAllSamples(context);
+            final SampleSearchIndex searchIndex = new SampleSearchIndex(samples);
+            final String[] labels = new String[samples.size()];
+            for (int i = 0; i < labels.length; i++) {
+                Sample sample = samples.get(i);
+                labels[i] = context.getString(R.string.search_result, sample.getTitle(),
+                        sample.getComposer());
+            }
+            mainHandler.post(() -> {
+                if (isDestroyed()) {
+                    return;
+                }
+                mSearchIndex = searchIndex;
+                mLabels = labels;
+                // Catch up with whatever was typed while the index was being built.
+                afterTextChanged(binding.searchText.getText());
+            });
+        });
+
+        mAdapter = new ArrayAdapter<>(this, android.R.layout.simple_list_item_1, mResultLabels);
+        binding.searchResults.setAdapter(mAdapter);
+        binding.searchResults.setOnItemClickListener((parent, view, position, id) ->
+                playSample(mSearchIndex.getSample(mResultPositions[position])));
+        binding.searchText.addTextChangedListener(this);
+
+        binding.playerView.setPlayer(new SimpleExoPlayer.Builder(this).build());
+    }
+
+    @Override
+    public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+    }
+
+    @Override
+    public void onTextChanged(CharSequence s, int start, int before, int count) {
+    }
+
+    @Override
+    public void afterTextChanged(Editable s) {
+        if (mSearchIndex == null) {
+            return;
+        }
+        int count = mSearchIndex.search(s, mResultPositions);
+        mResultLabels.clear();
+        for (int i = 0; i < count; i++) {
+            mResultLabels.add(mLabels[mResultPositions[i]]);
+        }
+        mAdapter.notifyDataSetChanged();
+    }
+
+    /**
+     * Shows the composer and plays the selected sample.
+     * @param sample The sample to play.
+     */
+    private void playSample(Sample sample) {
+        binding.playerView.setDefaultArtwork(Sample.getComposerArt(this, sample));
+        MediaItem mediaItem = MediaItem.fromUri(Uri.parse(sample.getUri()));
+        binding.playerView.getPlayer().setMediaItem(mediaItem);
+        binding.playerView.getPlayer().setPlayWhenReady(true);
+        binding.playerView.getPlayer().prepare();
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        // Stop playing once the screen is hidden. The player keeps its place, so the controls
+        // carry on from there when the user comes back.
+        if (binding.playerView.getPlayer() != null) {
+            binding.playerView.getPlayer().pause();
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (binding.playerView.getPlayer() != null) {
+            binding.playerView.getPlayer().release();
+            binding.playerView.setPlayer(null);
+        }
+    }
+}
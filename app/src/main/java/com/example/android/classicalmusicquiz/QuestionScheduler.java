@@ -0,0 +1,207 @@
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package com.example.android.classicalmusicquiz;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.google.android.exoplayer2.ExoPlaybackException;
+import com.google.android.exoplayer2.Player;
+import com.google.android.exoplayer2.SimpleExoPlayer;
+
+/**
+ * Moves the quiz on to the next question. The answer is shown for a minimum time, then the next
+ * question starts as soon as its audio is ready, or after a maximum time if it never gets ready.
+ *
+ * The next question's player is prepared while the answer is shown, and handed over to the next
+ * QuizActivity when the transition runs. If no QuizActivity takes it within
+ * HANDOVER_TIMEOUT_MILLIS, say because the user left the quiz mid-transition, it is released.
+ * All methods must be called on the main thread.
+ */
+class QuestionScheduler implements Player.EventListener {
+
+    static final long HANDOVER_TIMEOUT_MILLIS = 10000;
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+    // The prepared player waiting for the next QuizActivity to take it.
+    private static Prepared sHandedOver;
+    private static final Runnable sReleaseUnclaimed = () -> {
+        if (sHandedOver != null) {
+            sHandedOver.release();
+            sHandedOver = null;
+        }
+    };
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private Runnable mTransition;
+    private Prepared mPrepared;
+    private boolean mMinimumElapsed, mReady;
+    private long mScheduledAtMillis;
+    private long mTransitionDelayMillis = -1;
+    private final Runnable mMinimumPassed = () -> {
+        mMinimumElapsed = true;
+        if (mReady) {
+            runTransition();
+        }
+    };
+    private final Runnable mMaximumPassed = this::runTransition;
+
+    /**
+     * A player that has been prepared for a question but not started.
+     */
+    static class Prepared {
+        final SimpleExoPlayer mPlayer;
+        final PcmReplayCache mReplayCache;
+        final int mAnswerSampleID;
+
+        /**
+         * @param player The player, prepared with the question's sample and not playing.
+         * @param replayCache The replay cache the player was built with, or null.
+         * @param answerSampleID The ID of the sample the player was prepared with.
+         */
+        Prepared(SimpleExoPlayer player, PcmReplayCache replayCache, int answerSampleID) {
+            mPlayer = player;
+            mReplayCache = replayCache;
+            mAnswerSampleID = answerSampleID;
+        }
+
+        void release() {
+            mPlayer.release();
+            if (mReplayCache != null) {
+                mReplayCache.release();
+            }
+        }
+    }
+
+    /**
+     * Schedules the transition to the next question, replacing any transition already
+     * scheduled.
+     * @param minDelayMillis How long the answer is shown at least.
+     * @param maxDelayMillis How long to wait at most for the next question's audio.
+     * @param transition Starts the next question. Run on the main thread.
+     */
+    void schedule(long minDelayMillis, long maxDelayMillis, Runnable transition) {
+        cancel();
+        mTransition = transition;
+        mScheduledAtMillis = SystemClock.uptimeMillis();
+        mHandler.postDelayed(mMinimumPassed, minDelayMillis);
+        mHandler.postDelayed(mMaximumPassed, Math.max(minDelayMillis, maxDelayMillis));
+    }
+
+    /**
+     * Starts watching a player prepared for the next question. The transition waits for it to
+     * be ready, and then hands it over to the next QuizActivity.
+     * @param prepared The player prepared for the next question.
+     */
+    void prepare(Prepared prepared) {
+        mPrepared = prepared;
+        prepared.mPlayer.addListener(this);
+        if (prepared.mPlayer.getPlaybackState() == Player.STATE_READY) {
+            onNextQuestionReady();
+        }
+    }
+
+    /**
+     * Lets the transition run as soon as the minimum time has passed. Called when the next
+     * question's audio is ready, or when there is nothing to wait for.
+     */
+    void onNextQuestionReady() {
+        mReady = true;
+        if (mMinimumElapsed) {
+            runTransition();
+        }
+    }
+
+    /**
+     * Cancels the scheduled transition, if any, and releases the prepared player unless it has
+     * already been handed over. Safe to call more than once.
+     */
+    void cancel() {
+        mHandler.removeCallbacks(mMinimumPassed);
+        mHandler.removeCallbacks(mMaximumPassed);
+        mTransition = null;
+        mMinimumElapsed = false;
+        mReady = false;
+        if (mPrepared != null) {
+            mPrepared.mPlayer.removeListener(this);
+            mPrepared.release();
+            mPrepared = null;
+        }
+    }
+
+    /**
+     * @return How long the last transition ran after it was scheduled, in milliseconds, or -1 if
+     * none has run yet. This is the part of the dead time between an answer and the next
+     * question's audio that the scheduler adds; starting the next question adds the rest.
+     */
+    long getTransitionDelayMillis() {
+        return mTransitionDelayMillis;
+    }
+
+    @Override
+    public void onPlaybackStateChanged(@Player.State int playbackState) {
+        if (playbackState == Player.STATE_READY) {
+            onNextQuestionReady();
+        }
+    }
+
+    @Override
+    public void onPlayerError(ExoPlaybackException error) {
+        // Nothing to wait for. The next question sees the error and loads its sample again.
+        onNextQuestionReady();
+    }
+
+    private void runTransition() {
+        if (mTransition == null) {
+            return;
+        }
+        Runnable transition = mTransition;
+        mTransition = null;
+        mHandler.removeCallbacks(mMinimumPassed);
+        mHandler.removeCallbacks(mMaximumPassed);
+        mTransitionDelayMillis = SystemClock.uptimeMillis() - mScheduledAtMillis;
+        if (mPrepared != null) {
+            mPrepared.mPlayer.removeListener(this);
+            if (sHandedOver != null) {
+                sHandedOver.release();
+            }
+            sHandedOver = mPrepared;
+            mPrepared = null;
+            sMainHandler.removeCallbacks(sReleaseUnclaimed);
+            sMainHandler.postDelayed(sReleaseUnclaimed, HANDOVER_TIMEOUT_MILLIS);
+        }
+        transition.run();
+    }
+
+    /**
+     * Takes the player handed over by the previous question.
+     * @param answerSampleID The ID of the sample the current question plays.
+     * @return The prepared player, or null if none was handed over for this sample. A player
+     * prepared for another sample is released.
+     */
+    static Prepared takePrepared(int answerSampleID) {
+        Prepared prepared = sHandedOver;
+        sHandedOver = null;
+        sMainHandler.removeCallbacks(sReleaseUnclaimed);
+        if (prepared != null && prepared.mAnswerSampleID != answerSampleID) {
+            prepared.release();
+            return null;
+        }
+        return prepared;
+    }
+}
@@ -16,6 +16,7 @@
 
 package com.example.android.classicalmusicquiz;
 
+import android.annotation.SuppressLint;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
@@ -27,10 +28,10 @@ import android.graphics.PorterDuff;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
-import android.os.Handler;
 import android.support.v4.media.session.MediaSessionCompat;
 import android.support.v4.media.session.PlaybackStateCompat;
 import android.util.Log;
+import android.view.MotionEvent;
 import android.view.View;
 import android.widget.Button;
 import android.widget.Toast;
@@ -58,19 +59,52 @@ import java.util.ArrayList;
 
 public class QuizActivity extends AppCompatActivity implements View.OnClickListener, EventListener {
 
+    // The answer is shown at least this long, and the next question starts once its audio is
+    // ready, or after CORRECT_ANSWER_DELAY_MILLIS at the latest.
+    private static final int MIN_ANSWER_DELAY_MILLIS = 1000;
+    private static final int SPEED_ROUND_ANSWER_DELAY_MILLIS = 500;
     private static final int CORRECT_ANSWER_DELAY_MILLIS = 2000;
+    // Speed round answers earn fewer points the longer they take, down to the minimum here.
+    private static final long SPEED_ROUND_ANSWER_WINDOW_MILLIS = 10000;
+    private static final String TIMING_TAG = "QuizTiming";
+    private static final boolean ENABLE_REPLAY_CACHE = true;
+    private static final int REPLAY_CACHE_MAX_BYTES = 4 * 1024 * 1024;
     private static final String REMAINING_SONGS_KEY = "remaining_songs";
+    private static final String QUESTION_INDEX_KEY = "question_index";
+    private static final String QUESTION_SAMPLE_IDS_KEY = "question_sample_ids";
+    private static final String ANSWER_SAMPLE_ID_KEY = "answer_sample_id";
+    private static final String ANSWERED_AT_KEY = "answered_at";
+    static final String DAILY_CHALLENGE_KEY = "daily_challenge";
+    static final String DAILY_CHALLENGE_DECK_KEY = "daily_challenge_deck";
+    static final String SPEED_ROUND_KEY = "speed_round";
     private ArrayList<Integer> mRemainingSampleIDs, mQuestionSampleIDs;
     private int mAnswerSampleID, mCurrentScore, mHighScore, mNotificationId;
+    private int mDailyChallengeDay, mQuestionIndex;
+    private int[] mDailyChallengeDeck;
+    private boolean mSpeedRound;
+    // When the previous answer and the latest touch on an answer button were given, on the
+    // System.nanoTime() clock.
+    private long mPreviousAnsweredAtNanos, mTouchedAtNanos;
     private Button[] mButtons;
     private ActivityQuizBinding binding;
     private static MediaSessionCompat mSessionCompat;
+    // The catalog snapshot the current game was started with. Catalog updates published while
+    // a game is in progress only apply to the next game.
+    private static SampleCatalog sGameCatalog;
+    private SampleCatalog mCatalog;
     private PlaybackStateCompat.Builder mPlaybackStateBuilder;
     private NotificationManager mNotificationManager;
+    private PcmReplayCache mReplayCache;
+    private ResponseTimer mResponseTimer;
+    private final QuestionScheduler mScheduler = new QuestionScheduler();
     private final MediaSessionCompat.Callback MediaSessionCallbacks = new MediaSessionCompat.Callback() {
 
         @Override
         public void onPlay() {
+            if (mReplayCache != null && mReplayCache.isReplaying()) {
+                // The opening is already playing from the replay cache.
+                return;
+            }
             if (binding.playerView.getPlayer() != null) {
                 binding.playerView.getPlayer().play();
                 onPlaybackStateChanged(binding.playerView.getPlayer().getPlaybackState());
@@ -79,16 +113,31 @@ public class QuizActivity extends AppCompatActivity implements View.OnClickListe
 
         @Override
         public void onPause() {
-            if (binding.playerView.getPlayer() != null) {
-                binding.playerView.getPlayer().pause();
-                onPlaybackStateChanged(binding.playerView.getPlayer().getPlaybackState());
+            long replayPositionMs = mReplayCache != null ? mReplayCache.stopReplay() : -1;
+            Player player = binding.playerView.getPlayer();
+            if (player != null) {
+                if (replayPositionMs >= 0) {
+                    // Carry on from where the replay got to, not from the end of the opening.
+                    player.seekTo(replayPositionMs);
+                    binding.playerView.setUseController(true);
+                }
+                player.pause();
+                onPlaybackStateChanged(player.getPlaybackState());
             }
         }
 
         @Override
         public void onSkipToPrevious() {
-            if (binding.playerView.getPlayer() != null) {
-                binding.playerView.getPlayer().seekTo(0L);
+            Player player = binding.playerView.getPlayer();
+            if (player == null) {
+                return;
+            }
+            // Play the opening from the decoded cache while the player seeks past it, so the
+            // restart doesn't wait for the mp3 to be read and decoded again.
+            if (mReplayCache == null) {
+                player.seekTo(0L);
+            } else if (mReplayCache.restart(player, QuizActivity.this::onReplayFinished)) {
+                onReplayStarted();
             }
         }
     };
@@ -123,17 +172,27 @@ public class QuizActivity extends AppCompatActivity implements View.OnClickListe
         mSessionCompat.setCallback(MediaSessionCallbacks);
 
         boolean isNewGame = !getIntent().hasExtra(REMAINING_SONGS_KEY);
+        mDailyChallengeDay = getIntent().getIntExtra(DAILY_CHALLENGE_KEY, -1);
+        mQuestionIndex = getIntent().getIntExtra(QUESTION_INDEX_KEY, 0);
+        mSpeedRound = getIntent().getBooleanExtra(SPEED_ROUND_KEY, false);
+        mPreviousAnsweredAtNanos = getIntent().getLongExtra(ANSWERED_AT_KEY, 0);
+
+        // A new game takes the current catalog snapshot and keeps it until the game ends.
+        if (isNewGame || sGameCatalog == null) {
+            sGameCatalog = Sample.getCatalog(this);
+        }
+        mCatalog = sGameCatalog;
 
         // If it's a new game, set the current score to 0 and load all samples.
         if (isNewGame) {
             QuizUtils.setCurrentScore(this, 0);
-            mRemainingSampleIDs = Sample.getAllSampleIDs(this);
+            mRemainingSampleIDs = mCatalog.getAllSampleIDs();
             // Otherwise, get the remaining songs from the Intent.
         } else {
             mRemainingSampleIDs = getIntent().getIntegerArrayListExtra(REMAINING_SONGS_KEY);
         }
 
-        mNotificationId = Sample.getAllSampleIDs(this).size() - mRemainingSampleIDs.size();
+        mNotificationId = mCatalog.getSamples().size() - mRemainingSampleIDs.size();
 
         binding.playerView.setDefaultArtwork(ContextCompat
                 .getDrawable(this, R.drawable.question_mark));
@@ -142,14 +201,47 @@ public class QuizActivity extends AppCompatActivity implements View.OnClickListe
         mCurrentScore = QuizUtils.getCurrentScore(this);
         mHighScore = QuizUtils.getHighScore(this);
 
-        // Generate a question and get the correct answer.
-        mQuestionSampleIDs = QuizUtils.generateQuestion(mRemainingSampleIDs);
-        mAnswerSampleID = QuizUtils.getCorrectAnswerID(mQuestionSampleIDs);
+        if (mDailyChallengeDay != -1) {
+            // Daily challenge questions come from the deck MainActivity loaded in the
+            // background, passed along from question to question.
+            mDailyChallengeDeck = getIntent().getIntArrayExtra(DAILY_CHALLENGE_DECK_KEY);
+            if (mDailyChallengeDeck == null) {
+                finish();
+                return;
+            }
+        }
+
+        if (getIntent().hasExtra(QUESTION_SAMPLE_IDS_KEY)) {
+            // The previous question picked this one, so it could get its audio ready.
+            mQuestionSampleIDs = getIntent().getIntegerArrayListExtra(QUESTION_SAMPLE_IDS_KEY);
+            mAnswerSampleID = getIntent().getIntExtra(ANSWER_SAMPLE_ID_KEY, -1);
+        } else {
+            mQuestionSampleIDs = pickQuestion(mQuestionIndex);
+            mAnswerSampleID = pickAnswer(mQuestionSampleIDs, mQuestionIndex);
+        }
+
+        // Take over the player the previous question prepared for this one, if any.
+        QuestionScheduler.Prepared prepared = QuestionScheduler.takePrepared(mAnswerSampleID);
 
         // If there is only one answer left, end the game.
         if (mQuestionSampleIDs.size() < 2) {
-            QuizUtils.endGame(this);
+            if (prepared != null) {
+                prepared.release();
+            }
+            // Score against the catalog the game was played on, not whatever is loaded now.
+            int questions = mCatalog.getSamples().size() - 1;
+            if (mDailyChallengeDay != -1) {
+                QuizUtils.endGame(this, ScoreStore.CATALOG_BUNDLED,
+                        DailyChallenge.getMode(mDailyChallengeDay),
+                        DailyChallenge.getQuestionCount(mDailyChallengeDeck));
+            } else if (mSpeedRound) {
+                QuizUtils.endGame(this, mCatalog.getKey(), ScoreStore.MODE_SPEED_ROUND,
+                        QuizUtils.getMaxSpeedScore(questions));
+            } else {
+                QuizUtils.endGame(this, mCatalog.getKey(), ScoreStore.MODE_CLASSIC, questions);
+            }
             finish();
+            return;
         }
 
         // Initialize the buttons with the composers names.
@@ -157,12 +249,49 @@ public class QuizActivity extends AppCompatActivity implements View.OnClickListe
 
         mSessionCompat.setActive(true);
 
-        Sample answerSample = Sample.getSampleByID(this, mAnswerSampleID);
+        Sample answerSample = mCatalog.getSampleByID(mAnswerSampleID);
         if (answerSample == null) {
+            if (prepared != null) {
+                prepared.release();
+            }
             Toast.makeText(this, R.string.sample_not_found_error, Toast.LENGTH_SHORT).show();
             return;
         }
-        initializePlayer(Uri.parse(answerSample.getUri()));
+        initializePlayer(Uri.parse(answerSample.getUri()), prepared);
+    }
+
+    /**
+     * Picks the possible answers for a question, from the daily challenge deck or at random from
+     * the remaining samples.
+     *
+     * @param questionIndex The index of the question in the game.
+     * @return The IDs of the possible answers, with fewer than two if the game is over.
+     */
+    private ArrayList<Integer> pickQuestion(int questionIndex) {
+        if (mDailyChallengeDeck != null) {
+            if (questionIndex < DailyChallenge.getQuestionCount(mDailyChallengeDeck)) {
+                return DailyChallenge.getQuestionSampleIDs(mDailyChallengeDeck, questionIndex);
+            }
+            return new ArrayList<>();
+        }
+        return QuizUtils.generateQuestion(mRemainingSampleIDs);
+    }
+
+    /**
+     * Picks the correct answer to a question picked by pickQuestion(int).
+     *
+     * @param questionSampleIDs The IDs of the possible answers.
+     * @param questionIndex The index of the question in the game.
+     * @return The ID of the correct answer, or -1 if the game is over.
+     */
+    private int pickAnswer(ArrayList<Integer> questionSampleIDs, int questionIndex) {
+        if (questionSampleIDs.size() < 2) {
+            return -1;
+        }
+        if (mDailyChallengeDeck != null) {
+            return DailyChallenge.getAnswerSampleID(mDailyChallengeDeck, questionIndex);
+        }
+        return QuizUtils.getCorrectAnswerID(questionSampleIDs);
     }
 
     /**
@@ -173,6 +302,7 @@ public class QuizActivity extends AppCompatActivity implements View.OnClickListe
      * @return The Array of initialized buttons.
      **/
     @NonNull
+    @SuppressLint("ClickableViewAccessibility")
     private Button[] initializeButtons(@NonNull ArrayList<Integer> answerSampleIDs) {
         Button[] buttons = {binding.buttonA, binding.buttonB, binding.buttonC, binding.buttonD};
         if (buttons.length > answerSampleIDs.size()) {
@@ -184,8 +314,20 @@ public class QuizActivity extends AppCompatActivity implements View.OnClickListe
         }
         for (int i = 0; i < buttons.length; i++) {
             if (buttons[i].getVisibility() != View.INVISIBLE) {
-                Sample currentSample = Sample.getSampleByID(this, answerSampleIDs.get(i));
+                Sample currentSample = mCatalog.getSampleByID(answerSampleIDs.get(i));
                 buttons[i].setOnClickListener(this);
+                // The click only comes when the finger lifts, so the answer is timed from the
+                // touch down. The listener doesn't consume the event.
+                buttons[i].setOnTouchListener((view, event) -> {
+                    if (event.getActionMasked() == MotionEvent.ACTION_DOWN) {
+                        mTouchedAtNanos = event.getEventTime() * 1000000L;
+                    } else if (event.getActionMasked() == MotionEvent.ACTION_CANCEL) {
+                        // The touch was taken over, by a scroll for example, so a later click,
+                        // say from the keyboard, mustn't be timed from it.
+                        mTouchedAtNanos = 0;
+                    }
+                    return false;
+                });
                 if (currentSample != null) {
                     buttons[i].setText(currentSample.getComposer());
                 }
@@ -198,24 +340,57 @@ public class QuizActivity extends AppCompatActivity implements View.OnClickListe
      * Initialize ExoPlayer.
      *
      * @param mediaUri The URI of the sample to play.
+     * @param prepared The player the previous question prepared with the sample, or null.
      */
-    private void initializePlayer(Uri mediaUri) {
+    private void initializePlayer(Uri mediaUri, QuestionScheduler.Prepared prepared) {
         if (binding.playerView.getPlayer() != null) {
+            if (prepared != null) {
+                prepared.release();
+            }
             return;
         }
 
-        // Create an instance of the ExoPlayer.
-        MediaItem mediaItem = MediaItem.fromUri(mediaUri);
-        TrackSelector trackSelector = new DefaultTrackSelector(this);
+        SimpleExoPlayer player;
+        if (prepared != null && prepared.mPlayer.getPlayerError() == null) {
+            // The sample is already loaded, so the audio starts as soon as it's asked to play.
+            player = prepared.mPlayer;
+            mReplayCache = prepared.mReplayCache;
+        } else {
+            if (prepared != null) {
+                prepared.release();
+            }
+            mReplayCache = ENABLE_REPLAY_CACHE ? new PcmReplayCache(REPLAY_CACHE_MAX_BYTES) : null;
+            player = buildPlayer(mReplayCache);
+            player.setMediaItem(MediaItem.fromUri(mediaUri));
+            player.prepare();
+        }
+        mResponseTimer = new ResponseTimer(player);
+        binding.playerView.setPlayer(player);
+        player.addListener(this);
+        player.setPlayWhenReady(true);
+    }
+
+    /**
+     * Builds a player that isn't tied to this activity, so it can be prepared here for the next
+     * question and handed over.
+     *
+     * @param replayCache The cache to capture the decoded audio in, or null.
+     * @return The new player.
+     */
+    private SimpleExoPlayer buildPlayer(PcmReplayCache replayCache) {
+        Context context = getApplicationContext();
+        TrackSelector trackSelector = new DefaultTrackSelector(context);
         LoadControl loadControl = new DefaultLoadControl();
-        SimpleExoPlayer.Builder builder = new SimpleExoPlayer.Builder(this);
+        SimpleExoPlayer.Builder builder;
+        if (replayCache != null) {
+            builder = new SimpleExoPlayer.Builder(context,
+                    replayCache.createRenderersFactory(context));
+        } else {
+            builder = new SimpleExoPlayer.Builder(context);
+        }
         builder.setTrackSelector(trackSelector);
         builder.setLoadControl(loadControl);
-        binding.playerView.setPlayer(builder.build());
-        binding.playerView.getPlayer().addListener(this);
-        binding.playerView.getPlayer().setMediaItem(mediaItem);
-        binding.playerView.getPlayer().setPlayWhenReady(true);
-        binding.playerView.getPlayer().prepare();
+        return builder.build();
     }
 
     /**
@@ -228,6 +403,11 @@ public class QuizActivity extends AppCompatActivity implements View.OnClickListe
     @Override
     public void onClick(View v) {
 
+        // Time the answer from the touch on the button, or from now if it wasn't touched.
+        long answeredAtNanos = mTouchedAtNanos != 0 ? mTouchedAtNanos : System.nanoTime();
+        mTouchedAtNanos = 0;
+        logTiming(answeredAtNanos);
+
         // Show the correct answer.
         showCorrectAnswer();
 
@@ -245,10 +425,23 @@ public class QuizActivity extends AppCompatActivity implements View.OnClickListe
         // Get the ID of the sample that the user selected.
         int userAnswerSampleID = mQuestionSampleIDs.get(userAnswerIndex);
 
-        // If the user is correct, increase there score and update high score.
-        if (QuizUtils.userCorrect(mAnswerSampleID, userAnswerSampleID)) {
+        if (mSpeedRound) {
+            // Score by how long after the audio started the user answered. An answer given
+            // before the audio was heard is a guess, and earns the least.
+            long responseMillis = mResponseTimer != null
+                    ? mResponseTimer.getResponseMillis(answeredAtNanos) : -1;
+            int points = QuizUtils.getSpeedScore(mAnswerSampleID, userAnswerSampleID,
+                    responseMillis < 0 ? SPEED_ROUND_ANSWER_WINDOW_MILLIS : responseMillis,
+                    SPEED_ROUND_ANSWER_WINDOW_MILLIS);
+            if (points > 0) {
+                mCurrentScore += points;
+                QuizUtils.setCurrentScore(this, mCurrentScore);
+            }
+        } else if (QuizUtils.userCorrect(mAnswerSampleID, userAnswerSampleID)) {
+            // If the user is correct, increase there score and update high score. The high
+            // score is for classic games; daily challenges are only ranked against their day.
             QuizUtils.setCurrentScore(this, ++mCurrentScore);
-            if (mCurrentScore > mHighScore) {
+            if (mDailyChallengeDay == -1 && mCurrentScore > mHighScore) {
                 mHighScore = mCurrentScore;
                 QuizUtils.setHighScore(this, mHighScore);
             }
@@ -257,15 +450,64 @@ public class QuizActivity extends AppCompatActivity implements View.OnClickListe
         // Remove the answer sample from the list of all samples, so it doesn't get asked again.
         mRemainingSampleIDs.remove(Integer.valueOf(mAnswerSampleID));
 
-        // Wait some time so the user can see the correct answer, then go to the next question.
-        final Handler handler = new Handler();
-        handler.postDelayed(() -> {
-            Intent nextQuestionIntent = new Intent(QuizActivity.this, QuizActivity.class);
-            nextQuestionIntent.putExtra(REMAINING_SONGS_KEY, mRemainingSampleIDs);
+        // Pick the next question now, so its audio can get ready while the answer is shown.
+        ArrayList<Integer> nextQuestionSampleIDs = pickQuestion(mQuestionIndex + 1);
+        int nextAnswerSampleID = pickAnswer(nextQuestionSampleIDs, mQuestionIndex + 1);
+
+        final Intent nextQuestionIntent = new Intent(QuizActivity.this, QuizActivity.class);
+        nextQuestionIntent.putExtra(REMAINING_SONGS_KEY, mRemainingSampleIDs);
+        nextQuestionIntent.putExtra(QUESTION_SAMPLE_IDS_KEY, nextQuestionSampleIDs);
+        nextQuestionIntent.putExtra(ANSWER_SAMPLE_ID_KEY, nextAnswerSampleID);
+        nextQuestionIntent.putExtra(ANSWERED_AT_KEY, answeredAtNanos);
+        nextQuestionIntent.putExtra(SPEED_ROUND_KEY, mSpeedRound);
+        if (mDailyChallengeDay != -1) {
+            nextQuestionIntent.putExtra(DAILY_CHALLENGE_KEY, mDailyChallengeDay);
+            nextQuestionIntent.putExtra(DAILY_CHALLENGE_DECK_KEY, mDailyChallengeDeck);
+            nextQuestionIntent.putExtra(QUESTION_INDEX_KEY, mQuestionIndex + 1);
+        }
+
+        // Show the correct answer for a moment, then go to the next question as soon as its
+        // audio is ready.
+        mScheduler.schedule(mSpeedRound ? SPEED_ROUND_ANSWER_DELAY_MILLIS
+                : MIN_ANSWER_DELAY_MILLIS, CORRECT_ANSWER_DELAY_MILLIS, () -> {
+            Log.i(TIMING_TAG, "Moved on " + mScheduler.getTransitionDelayMillis()
+                    + " ms after the answer");
             finish();
             startActivity(nextQuestionIntent);
-        }, CORRECT_ANSWER_DELAY_MILLIS);
+        });
+        Sample nextAnswerSample = mCatalog.getSampleByID(nextAnswerSampleID);
+        if (nextAnswerSample != null) {
+            PcmReplayCache replayCache = ENABLE_REPLAY_CACHE
+                    ? new PcmReplayCache(REPLAY_CACHE_MAX_BYTES) : null;
+            SimpleExoPlayer nextPlayer = buildPlayer(replayCache);
+            nextPlayer.setMediaItem(MediaItem.fromUri(Uri.parse(nextAnswerSample.getUri())));
+            nextPlayer.prepare();
+            mScheduler.prepare(new QuestionScheduler.Prepared(nextPlayer, replayCache,
+                    nextAnswerSampleID));
+        } else {
+            // The game is over, or the sample is missing. Either way there's nothing to load.
+            mScheduler.onNextQuestionReady();
+        }
+    }
 
+    /**
+     * Logs how long after its audio started the question was answered, and how long the user
+     * waited between the previous answer and this question's audio.
+     *
+     * @param answeredAtNanos When the question was answered, on the System.nanoTime() clock.
+     */
+    private void logTiming(long answeredAtNanos) {
+        if (mResponseTimer == null || !mResponseTimer.hasAudioStarted()) {
+            Log.i(TIMING_TAG, "Answered before the audio started");
+            return;
+        }
+        Log.i(TIMING_TAG, "Answered " + mResponseTimer.getResponseMillis(answeredAtNanos)
+                + " ms after the audio started, +/- "
+                + mResponseTimer.getUncertaintyMillis() + " ms");
+        if (mPreviousAnsweredAtNanos != 0) {
+            Log.i(TIMING_TAG, "Audio started " + (mResponseTimer.getAudioStartNanos()
+                    - mPreviousAnsweredAtNanos) / 1000000L + " ms after the previous answer");
+        }
     }
 
     /**
@@ -288,7 +530,7 @@ public class QuizActivity extends AppCompatActivity implements View.OnClickListe
             mButtons[i].setTextColor(Color.WHITE);
         }
         binding.playerView.setDefaultArtwork(Sample
-                .getComposerArtBySampleID(this, mAnswerSampleID));
+                .getComposerArt(this, mCatalog.getSampleByID(mAnswerSampleID)));
     }
 
     public void onPlaybackStateChanged(@Player.State int playbackState) {
@@ -302,6 +544,11 @@ public class QuizActivity extends AppCompatActivity implements View.OnClickListe
                 Log.i(LOG_TAG, "The state is now buffering.");
                 break;
             case ExoPlayer.STATE_READY:
+                if (mReplayCache != null && mReplayCache.isReplaying()) {
+                    // The player is paused at the end of the opening, but the opening is
+                    // playing from the replay cache, and that's what the session shows.
+                    break;
+                }
                 if (binding.playerView.getPlayer().getPlayWhenReady()) {
                     mPlaybackStateBuilder.setState(PlaybackStateCompat.STATE_PLAYING,
                             binding.playerView.getPlayer().getCurrentPosition(),
@@ -321,6 +568,34 @@ public class QuizActivity extends AppCompatActivity implements View.OnClickListe
         }
     }
 
+    /**
+     * Shows the opening replaying from the cache as playing. The player is paused meanwhile and
+     * its controls would show that, so they are hidden until the replay ends.
+     */
+    private void onReplayStarted() {
+        binding.playerView.setUseController(false);
+        mPlaybackStateBuilder.setState(PlaybackStateCompat.STATE_PLAYING, 0, 1f);
+        mSessionCompat.setPlaybackState(mPlaybackStateBuilder.build());
+        showNotification(mPlaybackStateBuilder.build());
+    }
+
+    /**
+     * Called once the player has taken over from a replay that played to the end.
+     */
+    private void onReplayFinished() {
+        binding.playerView.setUseController(true);
+        if (binding.playerView.getPlayer() != null) {
+            onPlaybackStateChanged(binding.playerView.getPlayer().getPlaybackState());
+        }
+    }
+
+    @Override
+    public void onIsPlayingChanged(boolean isPlaying) {
+        if (isPlaying && mResponseTimer != null) {
+            mResponseTimer.onPlaybackStarted();
+        }
+    }
+
     @SuppressWarnings({"unused", "UnusedAssignment"})
     private void showNotification(PlaybackStateCompat state) {
 
@@ -374,11 +649,19 @@ public class QuizActivity extends AppCompatActivity implements View.OnClickListe
     }
 
     private void releasePlayer(@NonNull PlayerView player) {
+        if (mResponseTimer != null) {
+            mResponseTimer.stop();
+        }
+        // The player goes first, so its audio thread is done with the cache before it's freed.
         if (player.getPlayer() != null) {
             player.getPlayer().stop();
             player.getPlayer().release();
             player.setPlayer(null);
         }
+        if (mReplayCache != null) {
+            mReplayCache.release();
+            mReplayCache = null;
+        }
         mSessionCompat.setActive(false);
         mNotificationManager.cancel(mNotificationId);
     }
@@ -386,6 +669,8 @@ public class QuizActivity extends AppCompatActivity implements View.OnClickListe
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        // Drop a pending transition, and the player prepared for it if it wasn't handed over.
+        mScheduler.cancel();
         PlayerView player = findViewById(R.id.playerView);
         if ((player != null) && (binding.playerView.getPlayer() != null)) {
             releasePlayer(binding.playerView);
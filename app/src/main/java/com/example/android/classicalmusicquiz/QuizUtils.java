@@ -29,7 +29,10 @@ class QuizUtils {
     private static final String CURRENT_SCORE_KEY = "current_score";
     private static final String HIGH_SCORE_KEY = "high_score";
     private static final String GAME_FINISHED = "game_finished";
+    private static final String MAX_SCORE = "max_score";
     private static final int NUM_ANSWERS = 4;
+    private static final int MAX_SPEED_POINTS = 1000;
+    private static final int MIN_SPEED_POINTS = 500;
 
     /**
      * Generates an ArrayList of Integers that contains IDs to NUM_ANSWERS samples. These samples
@@ -39,9 +42,22 @@ class QuizUtils {
      * @return The ArrayList of possible answers.
      */
     static ArrayList<Integer> generateQuestion(ArrayList<Integer> remainingSampleIDs){
+        return generateQuestion(remainingSampleIDs, new Random());
+    }
+
+    /**
+     * Generates a question like generateQuestion(ArrayList), drawing from the given random number
+     * generator so that a seeded generator always yields the same question.
+     * @param remainingSampleIDs The ArrayList of Integers which contains the IDs of all
+     *                           samples that haven't been used yet.
+     * @param random The random number generator to shuffle with.
+     * @return The ArrayList of possible answers.
+     */
+    static ArrayList<Integer> generateQuestion(ArrayList<Integer> remainingSampleIDs,
+                                               Random random){
 
         // Shuffle the remaining sample ID's.
-        Collections.shuffle(remainingSampleIDs);
+        Collections.shuffle(remainingSampleIDs, random);
 
         ArrayList<Integer> answers = new ArrayList<>();
 
@@ -55,14 +71,25 @@ class QuizUtils {
         return answers;
     }
 
+    /**
+     * Gets the preferences through the application context. Its path to the file is cached, so
+     * unlike a new activity's context it doesn't check the preferences directory on the disk.
+     * @param context The application context.
+     * @return The quiz preferences.
+     */
+    private static SharedPreferences getPreferences(Context context) {
+        Context applicationContext = context.getApplicationContext();
+        return applicationContext.getSharedPreferences(
+                applicationContext.getString(R.string.preference_file_key), Context.MODE_PRIVATE);
+    }
+
     /**
      * Helper method for getting the user's high score.
      * @param context The application context.
      * @return The user's high score.
      */
     static int getHighScore(Context context){
-        SharedPreferences mPreferences = context.getSharedPreferences(
-                context.getString(R.string.preference_file_key), Context.MODE_PRIVATE);
+        SharedPreferences mPreferences = getPreferences(context);
         return mPreferences.getInt(HIGH_SCORE_KEY, 0);
     }
 
@@ -72,8 +99,7 @@ class QuizUtils {
      * @param highScore The user's high score.
      */
     static void setHighScore(Context context, int highScore){
-        SharedPreferences mPreferences = context.getSharedPreferences(
-                context.getString(R.string.preference_file_key), Context.MODE_PRIVATE);
+        SharedPreferences mPreferences = getPreferences(context);
         SharedPreferences.Editor editor = mPreferences.edit();
         editor.putInt(HIGH_SCORE_KEY, highScore);
         editor.apply();
@@ -85,8 +111,7 @@ class QuizUtils {
      * @return The user's current score.
      */
     static int getCurrentScore(Context context){
-        SharedPreferences mPreferences = context.getSharedPreferences(
-                context.getString(R.string.preference_file_key), Context.MODE_PRIVATE);
+        SharedPreferences mPreferences = getPreferences(context);
         return mPreferences.getInt(CURRENT_SCORE_KEY, 0);
     }
 
@@ -96,8 +121,7 @@ class QuizUtils {
      * @param currentScore The user's current score.
      */
     static void setCurrentScore(Context context, int currentScore){
-        SharedPreferences mPreferences = context.getSharedPreferences(
-                context.getString(R.string.preference_file_key), Context.MODE_PRIVATE);
+        SharedPreferences mPreferences = getPreferences(context);
         SharedPreferences.Editor editor = mPreferences.edit();
         editor.putInt(CURRENT_SCORE_KEY, currentScore);
         editor.apply();
@@ -109,8 +133,18 @@ class QuizUtils {
      * @return The correct answer.
      */
     static int getCorrectAnswerID(ArrayList<Integer> answers){
-        Random r = new Random();
-        int answerIndex = r.nextInt(answers.size());
+        return getCorrectAnswerID(answers, new Random());
+    }
+
+    /**
+     * Picks one of the possible answers to be the correct one using the given random number
+     * generator.
+     * @param answers The possible answers to the question.
+     * @param random The random number generator to pick with.
+     * @return The correct answer.
+     */
+    static int getCorrectAnswerID(ArrayList<Integer> answers, Random random){
+        int answerIndex = random.nextInt(answers.size());
         return answers.get(answerIndex);
     }
 
@@ -124,14 +158,54 @@ class QuizUtils {
         return userAnswer == correctAnswer;
     }
 
+    /**
+     * Scores an answer by both correctness and speed. A correct answer earns between
+     * MIN_SPEED_POINTS and MAX_SPEED_POINTS, decaying linearly over the answer window. A wrong
+     * answer earns nothing.
+     * @param correctAnswer The correct answer.
+     * @param userAnswer The user's answer.
+     * @param responseMillis How long the user took to answer.
+     * @param answerWindowMillis The time after which a correct answer earns the minimum score.
+     * @return The points earned by the answer.
+     */
+    static int getSpeedScore(int correctAnswer, int userAnswer, long responseMillis,
+                             long answerWindowMillis) {
+        if (!userCorrect(correctAnswer, userAnswer)) {
+            return 0;
+        }
+        if (answerWindowMillis <= 0) {
+            return MAX_SPEED_POINTS;
+        }
+        long clamped = Math.max(0, Math.min(responseMillis, answerWindowMillis));
+        return MIN_SPEED_POINTS + (int) ((MAX_SPEED_POINTS - MIN_SPEED_POINTS)
+                * (answerWindowMillis - clamped) / answerWindowMillis);
+    }
+
+    /**
+     * @param questions The number of questions in the game.
+     * @return The most points a game scored by getSpeedScore can earn.
+     */
+    static int getMaxSpeedScore(int questions) {
+        return questions * MAX_SPEED_POINTS;
+    }
+
 
     /**
      * Helper method for ending the game.
-     * @param context The application method.
+     * @param context The application context.
+     * @param catalog The key of the catalog the game was played on.
+     * @param mode The game mode the score is ranked under.
+     * @param maxScore The most the game could have scored.
      */
-    static void endGame(Context context){
+    static void endGame(Context context, String catalog, String mode, int maxScore){
+        // Record the finished game in the score history.
+        ScoreStore.getInstance(context).recordScores(Collections.singletonList(
+                new ScoreStore.Entry(catalog, mode, null,
+                        getCurrentScore(context), maxScore, System.currentTimeMillis())));
+
         Intent endGame = new Intent(context, MainActivity.class);
         endGame.putExtra(GAME_FINISHED, true);
+        endGame.putExtra(MAX_SCORE, maxScore);
         context.startActivity(endGame);
     }
 
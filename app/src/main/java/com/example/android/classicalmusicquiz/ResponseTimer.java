@@ -0,0 +1,133 @@
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package com.example.android.classicalmusicquiz;
+
+import android.view.Choreographer;
+
+import com.google.android.exoplayer2.Player;
+
+/**
+ * Times answers from the moment the clip's audio actually started, rather than from when the
+ * question was shown or the player was asked to play.
+ *
+ * Once playback starts, the player position is sampled on each of the next few Choreographer
+ * frames. The position is what has actually been played out, so each sample gives an estimate
+ * of when the audio started. Their mean is the start time and half their spread is its
+ * uncertainty. All times are on the System.nanoTime() clock, which input event times share.
+ */
+class ResponseTimer implements Choreographer.FrameCallback {
+
+    private static final int ESTIMATE_FRAMES = 8;
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    private final Player mPlayer;
+    private int mEstimates;
+    // Estimates are summed as offsets from the first one, so the sum can't overflow.
+    private long mFirstEstimate, mEstimateOffsetSum, mEarliestEstimate, mLatestEstimate;
+    private boolean mPolling;
+
+    /**
+     * @param player The player whose audio answers are timed against.
+     */
+    ResponseTimer(Player player) {
+        mPlayer = player;
+    }
+
+    /**
+     * Starts sampling the player position. Call when the player starts playing.
+     */
+    void onPlaybackStarted() {
+        if (!mPolling && mEstimates < ESTIMATE_FRAMES) {
+            mPolling = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    /**
+     * Stops sampling. The estimates taken so far are kept.
+     */
+    void stop() {
+        if (mPolling) {
+            mPolling = false;
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        mPolling = false;
+        if (!mPlayer.isPlaying()) {
+            // Paused before enough frames were sampled; carry on when playback resumes.
+            return;
+        }
+        // The frame time is when the frame was due, and the callback can run a while after
+        // that, so the position is paired with the time it was read.
+        long positionMs = mPlayer.getCurrentPosition();
+        long now = System.nanoTime();
+        if (positionMs > 0) {
+            long estimate = now - positionMs * NANOS_PER_MILLI;
+            if (mEstimates == 0) {
+                mFirstEstimate = estimate;
+                mEarliestEstimate = estimate;
+                mLatestEstimate = estimate;
+            } else {
+                mEarliestEstimate = Math.min(mEarliestEstimate, estimate);
+                mLatestEstimate = Math.max(mLatestEstimate, estimate);
+            }
+            mEstimateOffsetSum += estimate - mFirstEstimate;
+            mEstimates++;
+        }
+        if (mEstimates < ESTIMATE_FRAMES) {
+            mPolling = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    /**
+     * @return true once at least one frame has seen the audio playing.
+     */
+    boolean hasAudioStarted() {
+        return mEstimates > 0;
+    }
+
+    /**
+     * @return When the audio started, on the System.nanoTime() clock.
+     */
+    long getAudioStartNanos() {
+        return mFirstEstimate + mEstimateOffsetSum / Math.max(1, mEstimates);
+    }
+
+    /**
+     * @return How far the real start may be from getAudioStartNanos(), in milliseconds.
+     */
+    long getUncertaintyMillis() {
+        // Positions are whole milliseconds, so the spread is never taken as less than that.
+        return Math.max(1, (mLatestEstimate - mEarliestEstimate) / 2 / NANOS_PER_MILLI);
+    }
+
+    /**
+     * @param answeredAtNanos When the answer was given, on the System.nanoTime() clock.
+     * @return Milliseconds from the start of the audio to the answer, or -1 if the audio
+     * hadn't been seen to start.
+     */
+    long getResponseMillis(long answeredAtNanos) {
+        if (!hasAudioStarted()) {
+            return -1;
+        }
+        return Math.max(0, (answeredAtNanos - getAudioStartNanos()) / NANOS_PER_MILLI);
+    }
+}
@@ -21,8 +21,10 @@ import android.content.res.AssetManager;
 import android.graphics.drawable.Drawable;
 import android.net.Uri;
 import android.util.JsonReader;
+import android.util.JsonToken;
 import android.widget.Toast;
 
+import androidx.annotation.VisibleForTesting;
 import androidx.core.content.ContextCompat;
 
 import com.google.android.exoplayer2.upstream.DataSource;
@@ -36,6 +38,9 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Java Object representing a single sample. Also includes utility methods for obtaining samples
@@ -44,14 +49,19 @@ import java.util.ArrayList;
 @SuppressWarnings("unused")
 class Sample {
 
+    private static final AtomicReference<SampleCatalog> sCatalog = new AtomicReference<>();
+    private static List<Sample> sBundledSamples;
+    private static int sCatalogParseCount;
+
     private int mSampleID;
     private String mComposer;
     private String mTitle;
     private String mUri;
     private String mAlbumArtID;
+    private long mDurationMs;
 
 
-    private Sample(int sampleID, String composer, String title, String uri, String albumArtID) {
+    Sample(int sampleID, String composer, String title, String uri, String albumArtID) {
         mSampleID = sampleID;
         mComposer = composer;
         mTitle = title;
@@ -66,11 +76,24 @@ class Sample {
      * @return The portrait Bitmap.
      */
     static Drawable getComposerArtBySampleID(Context context, int sampleID){
-        Sample sample = Sample.getSampleByID(context, sampleID);
-        int albumArtID = context.getResources().getIdentifier(
-                sample != null ? sample.getAlbumArtID() : null, "drawable",
-                context.getPackageName());
-        return ContextCompat.getDrawable(context, albumArtID);
+        return getComposerArt(context, Sample.getSampleByID(context, sampleID));
+    }
+
+    /**
+     * Gets portrait of the composer for a sample. Samples from user catalogs usually have no
+     * portrait, so they get the question mark.
+     * @param context The application context.
+     * @param sample The sample.
+     * @return The portrait Bitmap.
+     */
+    static Drawable getComposerArt(Context context, Sample sample){
+        int albumArtID = 0;
+        if (sample != null && sample.getAlbumArtID() != null) {
+            albumArtID = context.getResources().getIdentifier(sample.getAlbumArtID(),
+                    "drawable", context.getPackageName());
+        }
+        return ContextCompat.getDrawable(context,
+                albumArtID != 0 ? albumArtID : R.drawable.question_mark);
     }
 
     /**
@@ -80,22 +103,7 @@ class Sample {
      * @return The sample object.
      */
     static Sample getSampleByID(Context context, int sampleID) {
-        JsonReader reader;
-        try {
-            reader = readJSONFile(context);
-            reader.beginArray();
-            while (reader.hasNext()) {
-                Sample currentSample = readEntry(reader);
-                if (currentSample.getSampleID() == sampleID) {
-                    reader.close();
-                    return currentSample;
-                }
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        return null;
+        return getCatalog(context).getSampleByID(sampleID);
     }
 
     /**
@@ -104,62 +112,184 @@ class Sample {
      * @return The ArrayList of all sample IDs.
      */
     static ArrayList<Integer> getAllSampleIDs(Context context){
-        JsonReader reader;
-        ArrayList<Integer> sampleIDs = new ArrayList<>();
+        return getCatalog(context).getAllSampleIDs();
+    }
+
+    /**
+     * Gets all of the Samples in the current catalog.
+     * @param context The application context.
+     * @return The unmodifiable List of all samples.
+     */
+    static List<Sample> getAllSamples(Context context) {
+        return getCatalog(context).getSamples();
+    }
+
+    /**
+     * Gets the current catalog snapshot. The bundled JSON file is only parsed the first time;
+     * after that readers share whichever snapshot was published last, without locking.
+     * @param context The application context.
+     * @return The current catalog.
+     */
+    static SampleCatalog getCatalog(Context context) {
+        SampleCatalog catalog = sCatalog.get();
+        if (catalog == null) {
+            catalog = new SampleCatalog(getBundledSamples(context), false);
+            if (!sCatalog.compareAndSet(null, catalog)) {
+                catalog = sCatalog.get();
+            }
+        }
+        return catalog;
+    }
+
+    /**
+     * Replaces the current catalog. Games already holding the previous snapshot keep using it.
+     * @param catalog The new catalog.
+     */
+    static void publishCatalog(SampleCatalog catalog) {
+        sCatalog.set(catalog);
+    }
+
+    /**
+     * Gets the Samples from the JSON file bundled in the assets, parsing it the first time.
+     * @param context The application context.
+     * @return The unmodifiable List of bundled samples.
+     */
+    static synchronized List<Sample> getBundledSamples(Context context) {
+        if (sBundledSamples == null) {
+            sCatalogParseCount++;
+            List<Sample> samples = new ArrayList<>();
+            try {
+                samples = readSamples(readJSONFile(context));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            sBundledSamples = Collections.unmodifiableList(samples);
+        }
+        return sBundledSamples;
+    }
+
+    /**
+     * Reads every valid sample from a JSON array of samples and closes the reader. Entries that
+     * aren't valid samples are skipped.
+     * @param reader The JSON reader object pointing to the JSON array of samples.
+     * @return The samples, in file order.
+     * @throws IOException Exception thrown if the JSON can't be read.
+     */
+    static List<Sample> readSamples(JsonReader reader) throws IOException {
+        ArrayList<Sample> samples = new ArrayList<>();
         try {
-            reader = readJSONFile(context);
             reader.beginArray();
             while (reader.hasNext()) {
-                sampleIDs.add(readEntry(reader).getSampleID());
+                Sample sample = readEntry(reader);
+                if (sample != null) {
+                    samples.add(sample);
+                }
             }
+            reader.endArray();
+        } finally {
             reader.close();
-        } catch (IOException e) {
-            e.printStackTrace();
         }
-        return sampleIDs;
+        return samples;
     }
 
     /**
-     * Method used for obtaining a single sample from the JSON file.
+     * @return The number of times the JSON file has been parsed.
+     */
+    @VisibleForTesting
+    static synchronized int getCatalogParseCount() {
+        return sCatalogParseCount;
+    }
+
+    /**
+     * Method used for obtaining a single sample from the JSON file. User catalogs are written by
+     * hand, so a field of the wrong type is ignored rather than failing the whole file.
      * @param reader The JSON reader object pointing a single sample JSON object.
-     * @return The Sample the JsonReader is pointing to.
+     * @return The Sample the JsonReader is pointing to, or null if the entry has no valid ID or
+     * no uri.
+     * @throws IOException Exception thrown if the JSON can't be read.
      */
-    private static Sample readEntry(JsonReader reader) {
+    private static Sample readEntry(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+
         int id = -1;
         String composer = null;
         String title = null;
         String uri = null;
         String albumArtID = null;
+        long durationMs = 0;
 
-        try {
-            reader.beginObject();
-            while (reader.hasNext()) {
-                String name = reader.nextName();
-                switch (name) {
-                    case "name":
-                        title = reader.nextString();
-                        break;
-                    case "id":
-                        id = reader.nextInt();
-                        break;
-                    case "composer":
-                        composer = reader.nextString();
-                        break;
-                    case "uri":
-                        uri = reader.nextString();
-                        break;
-                    case "albumArtID":
-                        albumArtID = reader.nextString();
-                        break;
-                    default:
-                        break;
-                }
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            String value = readValue(reader);
+            if (value == null) {
+                continue;
             }
-            reader.endObject();
-        } catch (IOException e) {
-            e.printStackTrace();
+            switch (name) {
+                case "name":
+                    title = value;
+                    break;
+                case "id":
+                    long parsedID = parseNumber(value, -1);
+                    id = parsedID <= Integer.MAX_VALUE ? (int) parsedID : -1;
+                    break;
+                case "composer":
+                    composer = value;
+                    break;
+                case "uri":
+                    uri = value;
+                    break;
+                case "albumArtID":
+                    albumArtID = value;
+                    break;
+                case "duration":
+                    durationMs = parseNumber(value, 0);
+                    break;
+                default:
+                    break;
+            }
+        }
+        reader.endObject();
+
+        // Without an ID the sample can't be asked, and without a uri it can't be played.
+        if (id < 0 || uri == null || uri.isEmpty()) {
+            return null;
+        }
+        Sample sample = new Sample(id, composer, title, uri, albumArtID);
+        sample.setDurationMs(durationMs);
+        return sample;
+    }
+
+    /**
+     * Reads a string or number value as a string, and skips any other value.
+     * @param reader The JSON reader object pointing to a value.
+     * @return The value, or null if it isn't a string or a number.
+     * @throws IOException Exception thrown if the JSON can't be read.
+     */
+    private static String readValue(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.STRING || token == JsonToken.NUMBER) {
+            return reader.nextString();
+        }
+        reader.skipValue();
+        return null;
+    }
+
+    /**
+     * @param value The value read from the JSON file.
+     * @param fallback Returned if the value isn't a whole number of at least 0.
+     * @return The number.
+     */
+    private static long parseNumber(String value, long fallback) {
+        try {
+            long number = Long.parseLong(value.trim());
+            return number >= 0 ? number : fallback;
+        } catch (NumberFormatException e) {
+            return fallback;
         }
-        return new Sample(id, composer, title, uri, albumArtID);
     }
 
     /**
@@ -239,4 +369,12 @@ class Sample {
     void setAlbumArtID(String albumArtID) {
         mAlbumArtID = albumArtID;
     }
+
+    long getDurationMs() {
+        return mDurationMs;
+    }
+
+    void setDurationMs(long durationMs) {
+        mDurationMs = durationMs;
+    }
 }
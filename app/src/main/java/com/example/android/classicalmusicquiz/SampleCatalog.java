@@ -0,0 +1,95 @@
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package com.example.android.classicalmusicquiz;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * An immutable snapshot of every sample that can be asked. A new snapshot is built and swapped
+ * in whenever a catalog changes, so readers never need to lock.
+ */
+final class SampleCatalog {
+
+    private static final String MERGED_KEY_PREFIX = "merged-";
+
+    private final List<Sample> mSamples;
+    private final HashMap<Integer, Sample> mSamplesByID;
+    private final String mKey;
+
+    /**
+     * @param samples The samples in the catalog. When two samples share an ID, the first wins.
+     * @param merged true if user samples were added to the bundled ones.
+     */
+    SampleCatalog(List<Sample> samples, boolean merged) {
+        ArrayList<Sample> unique = new ArrayList<>(samples.size());
+        mSamplesByID = new HashMap<>(samples.size() * 2);
+        for (Sample sample : samples) {
+            if (!mSamplesByID.containsKey(sample.getSampleID())) {
+                mSamplesByID.put(sample.getSampleID(), sample);
+                unique.add(sample);
+            }
+        }
+        mSamples = Collections.unmodifiableList(unique);
+
+        if (merged) {
+            // Two merged catalogs with the same samples rank their games together, whatever
+            // order their files were read in.
+            ArrayList<Integer> sampleIDs = getAllSampleIDs();
+            Collections.sort(sampleIDs);
+            mKey = MERGED_KEY_PREFIX + String.format(Locale.US, "%08x", sampleIDs.hashCode());
+        } else {
+            mKey = ScoreStore.CATALOG_BUNDLED;
+        }
+    }
+
+    /**
+     * @return The key that scores of games played on this catalog are ranked under.
+     */
+    String getKey() {
+        return mKey;
+    }
+
+    /**
+     * @return The unmodifiable List of all samples.
+     */
+    List<Sample> getSamples() {
+        return mSamples;
+    }
+
+    /**
+     * @param sampleID The sample ID.
+     * @return The sample with that ID, or null if it isn't in the catalog.
+     */
+    Sample getSampleByID(int sampleID) {
+        return mSamplesByID.get(sampleID);
+    }
+
+    /**
+     * @return A new ArrayList of the IDs of all samples.
+     */
+    ArrayList<Integer> getAllSampleIDs() {
+        ArrayList<Integer> sampleIDs = new ArrayList<>(mSamples.size());
+        for (Sample sample : mSamples) {
+            sampleIDs.add(sample.getSampleID());
+        }
+        return sampleIDs;
+    }
+}
@@ -0,0 +1,274 @@
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package com.example.android.classicalmusicquiz;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Prefix search over the titles and composers of a catalog. Every word of a title or composer
+ * starts a key that runs to the end of that field, so "chop", "frederic ch" and "nocturne op"
+ * all match. Keys are folded to lower case without accents and kept in one sorted char array,
+ * so a lookup is a binary search with no allocation.
+ *
+ * When a query extends the previous one, as it does while the user types, the search is
+ * narrowed to the range matched last time. Not thread safe; use one index per screen.
+ */
+class SampleSearchIndex {
+
+    private static final char[] FOLDED = buildFoldingTable();
+
+    private final List<Sample> mSamples;
+    private final char[] mKeyChars;
+    private final int[] mKeyStarts;
+    private final int[] mKeyLengths;
+    private final int[] mKeySamples;
+
+    private char[] mQuery = new char[32];
+    private int mQueryLength;
+    private int mRangeStart;
+    private int mRangeEnd;
+
+    private final int[] mSeenGeneration;
+    private int mGeneration;
+
+    /**
+     * Builds the index over a catalog.
+     * @param samples The samples to index. Search results are positions in this list.
+     */
+    SampleSearchIndex(List<Sample> samples) {
+        mSamples = samples;
+
+        StringBuilder pool = new StringBuilder();
+        ArrayList<int[]> keys = new ArrayList<>();
+        for (int position = 0; position < samples.size(); position++) {
+            Sample sample = samples.get(position);
+            addKeys(pool, keys, sample.getComposer(), position);
+            addKeys(pool, keys, sample.getTitle(), position);
+        }
+        final char[] chars = new char[pool.length()];
+        pool.getChars(0, pool.length(), chars, 0);
+
+        Collections.sort(keys, (a, b) -> compare(chars, a[0], a[1], chars, b[0], b[1]));
+
+        mKeyChars = chars;
+        mKeyStarts = new int[keys.size()];
+        mKeyLengths = new int[keys.size()];
+        mKeySamples = new int[keys.size()];
+        for (int i = 0; i < keys.size(); i++) {
+            int[] key = keys.get(i);
+            mKeyStarts[i] = key[0];
+            mKeyLengths[i] = key[1];
+            mKeySamples[i] = key[2];
+        }
+        mRangeEnd = keys.size();
+        mSeenGeneration = new int[samples.size()];
+    }
+
+    /**
+     * Finds the samples whose title or composer has a word starting with the query.
+     * @param query The text typed by the user.
+     * @param results Filled with the positions of the matching samples, without duplicates.
+     * @return The number of results written, at most results.length.
+     */
+    int search(CharSequence query, int[] results) {
+        int previousLength = mQueryLength;
+        boolean narrows = foldQuery(query) && mQueryLength >= previousLength;
+
+        if (!narrows) {
+            mRangeStart = 0;
+            mRangeEnd = mKeyStarts.length;
+        }
+        if (mQueryLength == 0) {
+            return 0;
+        }
+
+        int start = lowerBound(mRangeStart, mRangeEnd);
+        int end = upperBound(start, mRangeEnd);
+        mRangeStart = start;
+        mRangeEnd = end;
+
+        // A sample can match on several keys, so only report it the first time.
+        if (++mGeneration == 0) {
+            Arrays.fill(mSeenGeneration, 0);
+            mGeneration = 1;
+        }
+        int count = 0;
+        for (int i = start; i < end && count < results.length; i++) {
+            int position = mKeySamples[i];
+            if (mSeenGeneration[position] != mGeneration) {
+                mSeenGeneration[position] = mGeneration;
+                results[count++] = position;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @param position A position returned by search.
+     * @return The sample at that position.
+     */
+    Sample getSample(int position) {
+        return mSamples.get(position);
+    }
+
+    /**
+     * Folds a string the same way keys and queries are folded.
+     * @param text The text to fold.
+     * @return The text in lower case, without accents, with words separated by single spaces.
+     */
+    static String fold(String text) {
+        StringBuilder folded = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = foldChar(text.charAt(i));
+            if (c == ' ' && (folded.length() == 0 || folded.charAt(folded.length() - 1) == ' ')) {
+                continue;
+            }
+            folded.append(c);
+        }
+        return folded.toString();
+    }
+
+    /**
+     * Folds the query into the reused query buffer.
+     * @return true if the previous query is a prefix of the new one.
+     */
+    private boolean foldQuery(CharSequence query) {
+        boolean extendsPrevious = true;
+        int length = 0;
+        for (int i = 0; i < query.length(); i++) {
+            char c = foldChar(query.charAt(i));
+            if (c == ' ' && (length == 0 || mQuery[length - 1] == ' ')) {
+                continue;
+            }
+            if (length == mQuery.length) {
+                mQuery = Arrays.copyOf(mQuery, length * 2);
+            }
+            if (length < mQueryLength && mQuery[length] != c) {
+                extendsPrevious = false;
+            }
+            mQuery[length++] = c;
+        }
+        if (length < mQueryLength) {
+            extendsPrevious = false;
+        }
+        mQueryLength = length;
+        return extendsPrevious;
+    }
+
+    private int lowerBound(int from, int to) {
+        int low = from;
+        int high = to;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compare(mKeyChars, mKeyStarts[mid], mKeyLengths[mid], mQuery, 0,
+                    mQueryLength) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Finds the end of the run of keys starting with the query. Keys are sorted, so from the
+     * lower bound on, every key starts with the query up to some point and none does after it.
+     */
+    private int upperBound(int from, int to) {
+        int low = from;
+        int high = to;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (hasQueryPrefix(mid)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private boolean hasQueryPrefix(int key) {
+        if (mKeyLengths[key] < mQueryLength) {
+            return false;
+        }
+        int start = mKeyStarts[key];
+        for (int i = 0; i < mQueryLength; i++) {
+            if (mKeyChars[start + i] != mQuery[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void addKeys(StringBuilder pool, List<int[]> keys, String field,
+                                int position) {
+        if (field == null) {
+            return;
+        }
+        String folded = fold(field).trim();
+        int start = pool.length();
+        pool.append(folded);
+        for (int i = 0; i < folded.length(); i++) {
+            if (i == 0 || folded.charAt(i - 1) == ' ') {
+                keys.add(new int[]{start + i, folded.length() - i, position});
+            }
+        }
+    }
+
+    private static int compare(char[] a, int aStart, int aLength, char[] b, int bStart,
+                               int bLength) {
+        int length = Math.min(aLength, bLength);
+        for (int i = 0; i < length; i++) {
+            char ac = a[aStart + i];
+            char bc = b[bStart + i];
+            if (ac != bc) {
+                return ac - bc;
+            }
+        }
+        return aLength - bLength;
+    }
+
+    private static char foldChar(char c) {
+        if (c < FOLDED.length) {
+            return FOLDED[c];
+        }
+        return Character.isLetterOrDigit(c) ? Character.toLowerCase(c) : ' ';
+    }
+
+    /**
+     * Builds the folding table for Latin-1 and Latin Extended-A, which covers the accented
+     * names in the catalog. Letters lose their accents and case, and anything that isn't a
+     * letter or digit becomes a space.
+     */
+    private static char[] buildFoldingTable() {
+        char[] table = new char[0x250];
+        for (char c = 0; c < table.length; c++) {
+            if (!Character.isLetterOrDigit(c)) {
+                table[c] = ' ';
+                continue;
+            }
+            String decomposed = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD);
+            table[c] = Character.toLowerCase(decomposed.charAt(0));
+        }
+        return table;
+    }
+}
@@ -0,0 +1,205 @@
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package com.example.android.classicalmusicquiz;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.example.android.classicalmusicquiz.ScoreDbHelper.*;
+
+/**
+ * Leaderboards backed by SQLite. All database work runs on a single background
+ * thread, and results are delivered on the main thread. A database that can't be opened or
+ * written, because the disk is full for example, loses scores but never crashes the app.
+ */
+class ScoreStore {
+
+    private static final String TAG = "ScoreStore";
+
+    static final String CATALOG_BUNDLED = "bundled";
+    static final String MODE_CLASSIC = "classic";
+    static final String MODE_SPEED_ROUND = "speed";
+
+    private static final String[] COLUMNS = {COLUMN_ID, COLUMN_CATALOG, COLUMN_MODE,
+            COLUMN_PLAYER, COLUMN_SCORE, COLUMN_MAX_SCORE, COLUMN_PLAYED_AT};
+
+    private static ScoreStore sInstance;
+
+    private final ScoreDbHelper mDbHelper;
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Receives the result of a query on the main thread.
+     */
+    interface Callback<T> {
+        void onResult(T result);
+    }
+
+    /**
+     * A single recorded game.
+     */
+    static class Entry {
+        final long mId;
+        final String mCatalog;
+        final String mMode;
+        final String mPlayer;
+        final int mScore;
+        final int mMaxScore;
+        final long mPlayedAt;
+
+        Entry(String catalog, String mode, String player, int score, int maxScore,
+              long playedAt) {
+            this(-1, catalog, mode, player, score, maxScore, playedAt);
+        }
+
+        private Entry(long id, String catalog, String mode, String player, int score,
+                      int maxScore, long playedAt) {
+            mId = id;
+            mCatalog = catalog;
+            mMode = mode;
+            mPlayer = player;
+            mScore = score;
+            mMaxScore = maxScore;
+            mPlayedAt = playedAt;
+        }
+    }
+
+    @VisibleForTesting
+    ScoreStore(Context context) {
+        mDbHelper = new ScoreDbHelper(context);
+    }
+
+    /**
+     * Gets the shared score store.
+     * @param context The application context.
+     * @return The score store.
+     */
+    static synchronized ScoreStore getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ScoreStore(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Records a batch of finished games in a single transaction, reusing one compiled insert.
+     * If the database fails, none of the games are recorded.
+     * @param entries The games to record.
+     */
+    void recordScores(final List<Entry> entries) {
+        mExecutor.execute(() -> {
+            try {
+                insertScores(entries);
+            } catch (SQLiteException e) {
+                Log.e(TAG, "Can't record " + entries.size() + " scores", e);
+            }
+        });
+    }
+
+    private void insertScores(List<Entry> entries) {
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        try (SQLiteStatement insert = db.compileStatement("INSERT INTO " + TABLE_SCORES + " ("
+                + COLUMN_CATALOG + ", " + COLUMN_MODE + ", " + COLUMN_PLAYER + ", "
+                + COLUMN_SCORE + ", " + COLUMN_MAX_SCORE + ", " + COLUMN_PLAYED_AT
+                + ") VALUES (?, ?, ?, ?, ?, ?)")) {
+            db.beginTransaction();
+            try {
+                for (Entry entry : entries) {
+                    insert.clearBindings();
+                    insert.bindString(1, entry.mCatalog);
+                    insert.bindString(2, entry.mMode);
+                    if (entry.mPlayer != null) {
+                        insert.bindString(3, entry.mPlayer);
+                    }
+                    insert.bindLong(4, entry.mScore);
+                    insert.bindLong(5, entry.mMaxScore);
+                    insert.bindLong(6, entry.mPlayedAt);
+                    insert.executeInsert();
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
+    }
+
+    /**
+     * Gets one page of the leaderboard for a catalog and mode, best score first. Paging is by
+     * keyset, with a score bound SQLite seeks to, so deep pages cost about the same as the first
+     * one.
+     * @param catalog The catalog the games were played on.
+     * @param mode The game mode.
+     * @param after The last entry of the previous page, or null for the first page.
+     * @param limit The maximum number of entries to return.
+     * @param callback Receives the page on the main thread. The page is empty if the database
+     * can't be read.
+     */
+    void getTopScores(final String catalog, final String mode, final Entry after,
+                      final int limit, final Callback<List<Entry>> callback) {
+        mExecutor.execute(() -> {
+            String selection = COLUMN_CATALOG + " = ? AND " + COLUMN_MODE + " = ?";
+            String[] args;
+            if (after == null) {
+                args = new String[]{catalog, mode};
+            } else {
+                // The score <= ? term is redundant with the OR, but it's the one SQLite can use
+                // to seek into the ranking index instead of filtering every row above the page.
+                selection += " AND " + COLUMN_SCORE + " <= ? AND (" + COLUMN_SCORE + " < ? OR "
+                        + COLUMN_ID + " > ?)";
+                String score = String.valueOf(after.mScore);
+                args = new String[]{catalog, mode, score, score, String.valueOf(after.mId)};
+            }
+            List<Entry> page;
+            try {
+                page = query(selection, args, COLUMN_SCORE + " DESC, " + COLUMN_ID, limit);
+            } catch (SQLiteException e) {
+                Log.e(TAG, "Can't read the " + mode + " leaderboard", e);
+                page = new ArrayList<>();
+            }
+            final List<Entry> result = page;
+            mMainHandler.post(() -> callback.onResult(result));
+        });
+    }
+
+    private List<Entry> query(String selection, String[] args, String orderBy, int limit) {
+        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+        ArrayList<Entry> entries = new ArrayList<>(limit);
+        try (Cursor cursor = db.query(TABLE_SCORES, COLUMNS, selection, args, null, null,
+                orderBy, String.valueOf(limit))) {
+            while (cursor.moveToNext()) {
+                entries.add(new Entry(cursor.getLong(0), cursor.getString(1),
+                        cursor.getString(2), cursor.isNull(3) ? null : cursor.getString(3),
+                        cursor.getInt(4), cursor.getInt(5), cursor.getLong(6)));
+            }
+        }
+        return entries;
+    }
+}
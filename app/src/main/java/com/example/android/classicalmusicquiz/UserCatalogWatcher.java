@@ -0,0 +1,210 @@
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package com.example.android.classicalmusicquiz;
+
+import android.content.Context;
+import android.os.FileObserver;
+import android.util.JsonReader;
+import android.util.Log;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Watches the user catalog directory for .exolist.json files. When one is added, changed or
+ * removed, only the changed files are parsed again, on a background thread, and a new catalog
+ * snapshot of the bundled samples plus all user samples is published.
+ */
+class UserCatalogWatcher {
+
+    private static final String TAG = "UserCatalogWatcher";
+    static final String CATALOG_DIRECTORY = "catalogs";
+    private static final String CATALOG_SUFFIX = ".exolist.json";
+    private static final int EVENTS = FileObserver.CLOSE_WRITE | FileObserver.MOVED_TO
+            | FileObserver.MOVED_FROM | FileObserver.DELETE;
+
+    private static UserCatalogWatcher sInstance;
+
+    private final Context mContext;
+    private final File mDirectory;
+    private final FileObserver mObserver;
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    private final AtomicBoolean mReloadPending = new AtomicBoolean();
+    // Only touched on the executor thread.
+    private final HashMap<String, ParsedCatalog> mParsedCatalogs = new HashMap<>();
+    private int mParseCount;
+
+    /**
+     * Starts watching the user catalog directory, and loads the user catalogs already there.
+     * Calling it again does nothing.
+     * @param context The application context.
+     */
+    static synchronized void start(Context context) {
+        if (sInstance == null) {
+            final UserCatalogWatcher watcher = new UserCatalogWatcher(
+                    context.getApplicationContext(), getCatalogDirectory(context));
+            sInstance = watcher;
+            watcher.mExecutor.execute(() -> {
+                // The directory has to exist before it can be watched. Without it there are no
+                // user catalogs, and the bundled samples are all the quiz needs.
+                if (!watcher.createDirectory()) {
+                    return;
+                }
+                watcher.mObserver.startWatching();
+                watcher.reload();
+            });
+        }
+    }
+
+    /**
+     * @param context The application context.
+     * @return The directory user catalogs are read from.
+     */
+    static File getCatalogDirectory(Context context) {
+        return new File(context.getFilesDir(), CATALOG_DIRECTORY);
+    }
+
+    /**
+     * Creates a watcher that isn't watching yet. start() sets up the shared one.
+     * @param context The application context.
+     * @param directory The directory to read user catalogs from.
+     */
+    @VisibleForTesting
+    @SuppressWarnings("deprecation")
+    UserCatalogWatcher(Context context, File directory) {
+        mContext = context;
+        mDirectory = directory;
+        mObserver = new FileObserver(mDirectory.getPath(), EVENTS) {
+            @Override
+            public void onEvent(int event, String path) {
+                if (path != null && path.endsWith(CATALOG_SUFFIX)) {
+                    scheduleReload();
+                }
+            }
+        };
+    }
+
+    /**
+     * Queues a reload unless one is already waiting, so a burst of events costs one reload.
+     */
+    private void scheduleReload() {
+        if (mReloadPending.compareAndSet(false, true)) {
+            mExecutor.execute(() -> {
+                mReloadPending.set(false);
+                reload();
+            });
+        }
+    }
+
+    /**
+     * Creates the user catalog directory if it doesn't exist yet.
+     * @return false if it can't be created.
+     */
+    private boolean createDirectory() {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            Log.w(TAG, "Can't create " + mDirectory + ", user catalogs won't be loaded");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Parses the user catalogs that changed since the last reload and publishes a new catalog
+     * snapshot. Runs on the executor thread, or on the test thread in tests.
+     */
+    @VisibleForTesting
+    void reload() {
+        File[] files = mDirectory.listFiles((dir, name) -> name.endsWith(CATALOG_SUFFIX));
+        if (files == null) {
+            files = new File[0];
+        }
+        // Catalogs merge in name order, so which duplicate ID wins doesn't depend on the
+        // file system.
+        Arrays.sort(files);
+
+        HashMap<String, ParsedCatalog> parsedCatalogs = new HashMap<>();
+        List<Sample> bundledSamples = Sample.getBundledSamples(mContext);
+        ArrayList<Sample> samples = new ArrayList<>(bundledSamples);
+        for (File file : files) {
+            ParsedCatalog parsed = mParsedCatalogs.get(file.getName());
+            if (parsed == null || parsed.mLastModified != file.lastModified()
+                    || parsed.mLength != file.length()) {
+                parsed = parse(file);
+            }
+            if (parsed != null) {
+                parsedCatalogs.put(file.getName(), parsed);
+                samples.addAll(parsed.mSamples);
+            }
+        }
+        mParsedCatalogs.clear();
+        mParsedCatalogs.putAll(parsedCatalogs);
+
+        Sample.publishCatalog(new SampleCatalog(samples,
+                samples.size() > bundledSamples.size()));
+    }
+
+    /**
+     * Parses one user catalog. Invalid entries are skipped; a file that isn't valid JSON is
+     * skipped as a whole, and doesn't stop the other files from loading.
+     * @return The parsed catalog, or null if the file can't be read or isn't valid.
+     */
+    private ParsedCatalog parse(File file) {
+        mParseCount++;
+        long lastModified = file.lastModified();
+        long length = file.length();
+        try {
+            JsonReader reader = new JsonReader(new InputStreamReader(
+                    new FileInputStream(file), StandardCharsets.UTF_8));
+            return new ParsedCatalog(lastModified, length, Sample.readSamples(reader));
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Skipping user catalog " + file.getName(), e);
+            return null;
+        }
+    }
+
+    /**
+     * @return The number of user catalog files parsed so far.
+     */
+    @VisibleForTesting
+    int getParseCount() {
+        return mParseCount;
+    }
+
+    private static final class ParsedCatalog {
+        final long mLastModified;
+        final long mLength;
+        final List<Sample> mSamples;
+
+        ParsedCatalog(long lastModified, long length, List<Sample> samples) {
+            mLastModified = lastModified;
+            mLength = length;
+            mSamples = samples;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.android.classicalmusicquiz;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for daily challenge decks.
+ */
+public class DailyChallengeTest {
+
+    private static final List<Integer> SAMPLE_IDS = Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10);
+
+    @Test
+    public void sameDayAndCatalogGiveTheSameDeck() {
+        List<Integer> shuffled = new ArrayList<>(SAMPLE_IDS);
+        Collections.reverse(shuffled);
+
+        assertArrayEquals(DailyChallenge.buildDeck(20261018, SAMPLE_IDS),
+                DailyChallenge.buildDeck(20261018, shuffled));
+        assertFalse(Arrays.equals(DailyChallenge.buildDeck(20261018, SAMPLE_IDS),
+                DailyChallenge.buildDeck(20261019, SAMPLE_IDS)));
+    }
+
+    @Test
+    public void deckAsksEverySampleOnceLikeAGame() {
+        int[] deck = DailyChallenge.buildDeck(20261018, SAMPLE_IDS);
+
+        // A game ends when only one sample is left.
+        assertEquals(SAMPLE_IDS.size() - 1, DailyChallenge.getQuestionCount(deck));
+
+        HashSet<Integer> answers = new HashSet<>();
+        for (int i = 0; i < DailyChallenge.getQuestionCount(deck); i++) {
+            int answer = DailyChallenge.getAnswerSampleID(deck, i);
+            ArrayList<Integer> candidates = DailyChallenge.getQuestionSampleIDs(deck, i);
+            assertTrue(candidates.contains(answer));
+            assertTrue(candidates.size() >= 2
+                    && candidates.size() <= DailyChallenge.NUM_CANDIDATES);
+            assertEquals(candidates.size(), new HashSet<>(candidates).size());
+            assertTrue(answers.add(answer));
+        }
+    }
+
+    @Test
+    public void cachedDeckRoundTripsAndRejectsOtherCatalogs() throws IOException {
+        File directory = File.createTempFile("daily", "");
+        assertTrue(directory.delete());
+        File deckFile = new File(directory, "20261018.deck");
+        try {
+            int[] deck = DailyChallenge.buildDeck(20261018, SAMPLE_IDS);
+            DailyChallenge.writeDeck(deckFile, 20261018, SAMPLE_IDS.hashCode(), deck);
+
+            assertArrayEquals(deck,
+                    DailyChallenge.readDeck(deckFile, 20261018, SAMPLE_IDS.hashCode()));
+            assertNull(DailyChallenge.readDeck(deckFile, 20261018, 42));
+            assertNull(DailyChallenge.readDeck(deckFile, 20261019, SAMPLE_IDS.hashCode()));
+        } finally {
+            deckFile.delete();
+            directory.delete();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.android.classicalmusicquiz;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the music library importer over fixture files with a fake metadata extractor.
+ */
+public class MusicLibraryImporterTest {
+
+    private File mDirectory;
+    private File mLibrary;
+    private File mIndexFile;
+    private File mCatalogFile;
+    private MusicLibraryImporter.TrackSource mSource;
+    private final AtomicInteger mExtractions = new AtomicInteger();
+    private MusicLibraryImporter mImporter;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = Files.createTempDirectory("library").toFile();
+        mLibrary = new File(mDirectory, "Music");
+        mIndexFile = new File(mDirectory, "library.index");
+        mCatalogFile = new File(mDirectory, "catalogs/library.exolist.json");
+        mSource = new MusicLibraryImporter.DirectoryTrackSource(mLibrary);
+
+        // The fake extractor reads "composer|title" from the fixture itself.
+        mImporter = new MusicLibraryImporter(track -> {
+            mExtractions.incrementAndGet();
+            String[] fields = new String(Files.readAllBytes(new File(URI.create(track.mUri))
+                    .toPath()), StandardCharsets.UTF_8).split("\\|");
+            if (fields.length < 2) {
+                throw new IOException("No tags");
+            }
+            return new MusicLibraryImporter.Metadata(fields[1], fields[0], 1000);
+        }, 4);
+    }
+
+    @After
+    public void tearDown() {
+        delete(mDirectory);
+    }
+
+    @Test
+    public void importsAudioFilesWithTheirMetadata() throws IOException {
+        writeFixture("Bach/toccata.mp3", "Johann Sebastian Bach|Toccata \"and\" Fugue");
+        writeFixture("Chopin/nocturne.flac", "Fr\u00e9d\u00e9ric Chopin|Nocturne");
+        writeFixture("untagged.mp3", "");
+        writeFixture("no composer.ogg", "|Gymnop\u00e9die");
+        writeFixture("cover.jpg", "not audio");
+
+        MusicLibraryImporter.Result result = mImporter.importLibrary(mSource, mIndexFile,
+                mCatalogFile);
+
+        assertEquals(4, result.mScanned);
+        assertEquals(4, result.mExtracted);
+        assertTrue(result.mCatalogWritten);
+
+        String catalog = new String(Files.readAllBytes(mCatalogFile.toPath()),
+                StandardCharsets.UTF_8);
+        assertTrue(catalog.contains("\"name\": \"Toccata \\\"and\\\" Fugue\""));
+        assertTrue(catalog.contains("\"composer\": \"Fr\u00e9d\u00e9ric Chopin\""));
+        // Without a composer, the file name stands in for it.
+        assertTrue(catalog.contains("\"name\": \"untagged\""));
+        assertTrue(catalog.contains("\"composer\": \"untagged\""));
+        assertTrue(catalog.contains("\"composer\": \"no composer\""));
+        assertFalse(catalog.contains("\"composer\": \"\""));
+        assertTrue(catalog.contains("\"id\": " + MusicLibraryImporter.FIRST_SAMPLE_ID));
+        assertTrue(catalog.contains("\"duration\": 1000"));
+        assertFalse(catalog.contains("cover"));
+    }
+
+    @Test
+    public void rescanOnlyExtractsChangedFiles() throws IOException {
+        for (int i = 0; i < 50; i++) {
+            writeFixture("album/track" + i + ".mp3", "Composer " + i + "|Title " + i);
+        }
+        mImporter.importLibrary(mSource, mIndexFile, mCatalogFile);
+        assertEquals(50, mExtractions.get());
+        String firstCatalog = new String(Files.readAllBytes(mCatalogFile.toPath()),
+                StandardCharsets.UTF_8);
+
+        // Nothing changed: no extraction and the catalog is left alone.
+        mExtractions.set(0);
+        MusicLibraryImporter.Result result = mImporter.importLibrary(mSource, mIndexFile,
+                mCatalogFile);
+        assertEquals(0, mExtractions.get());
+        assertFalse(result.mCatalogWritten);
+
+        // One file changes size, one is removed and one is added.
+        writeFixture("album/track7.mp3", "Composer 7|A Longer Title 7");
+        assertTrue(new File(mLibrary, "album/track8.mp3").delete());
+        writeFixture("album/track50.mp3", "Composer 50|Title 50");
+        result = mImporter.importLibrary(mSource, mIndexFile, mCatalogFile);
+
+        assertEquals(2, mExtractions.get());
+        assertEquals(50, result.mScanned);
+        assertEquals(1, result.mRemoved);
+        String catalog = new String(Files.readAllBytes(mCatalogFile.toPath()),
+                StandardCharsets.UTF_8);
+        assertTrue(catalog.contains("A Longer Title 7"));
+        assertFalse(catalog.contains("Title 8\""));
+        // A new file never takes the ID of one that was removed.
+        assertTrue(catalog.contains("\"id\": " + (MusicLibraryImporter.FIRST_SAMPLE_ID + 50)));
+        assertTrue(firstCatalog.contains("\"id\": " + (MusicLibraryImporter.FIRST_SAMPLE_ID + 49)));
+    }
+
+    @Test
+    public void removingTheNewestFileDoesNotFreeItsID() throws IOException {
+        writeFixture("a.mp3", "Composer A|Title A");
+        writeFixture("b.mp3", "Composer B|Title B");
+        writeFixture("c.mp3", "Composer C|Title C");
+        mImporter.importLibrary(mSource, mIndexFile, mCatalogFile);
+        String catalog = new String(Files.readAllBytes(mCatalogFile.toPath()),
+                StandardCharsets.UTF_8);
+        assertTrue(catalog.contains("\"id\": " + (MusicLibraryImporter.FIRST_SAMPLE_ID + 2)));
+
+        // c.mp3 had the highest ID, so no entry left in the index remembers it.
+        assertTrue(new File(mLibrary, "c.mp3").delete());
+        mImporter.importLibrary(mSource, mIndexFile, mCatalogFile);
+        writeFixture("d.mp3", "Composer D|Title D");
+        mImporter.importLibrary(mSource, mIndexFile, mCatalogFile);
+
+        catalog = new String(Files.readAllBytes(mCatalogFile.toPath()), StandardCharsets.UTF_8);
+        assertFalse(catalog.contains("\"id\": " + (MusicLibraryImporter.FIRST_SAMPLE_ID + 2)));
+        assertTrue(catalog.contains("\"id\": " + (MusicLibraryImporter.FIRST_SAMPLE_ID + 3)));
+    }
+
+    private void writeFixture(String path, String contents) throws IOException {
+        File file = new File(mLibrary, path);
+        assertTrue(file.getParentFile().isDirectory() || file.getParentFile().mkdirs());
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(contents.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
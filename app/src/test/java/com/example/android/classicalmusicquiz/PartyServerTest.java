@@ -0,0 +1,190 @@
+package com.example.android.classicalmusicquiz;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Drives the party mode server over localhost with simulated players.
+ */
+public class PartyServerTest {
+
+    private static final int NUM_PLAYERS = 300;
+    private static final long ANSWER_WINDOW_MILLIS = 10000;
+    // A frame the server never sends fails the test instead of hanging it.
+    private static final int READ_TIMEOUT_MILLIS = 10000;
+
+    private PartyServer mServer;
+    private final List<SocketChannel> mPlayers = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new PartyServer(0, ANSWER_WINDOW_MILLIS, null);
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        for (SocketChannel player : mPlayers) {
+            player.close();
+        }
+        mServer.stop();
+    }
+
+    @Test
+    public void broadcastsQuestionToAllPlayersAndScoresAnswers() throws IOException {
+        int[] playerIDs = new int[NUM_PLAYERS];
+        for (int i = 0; i < NUM_PLAYERS; i++) {
+            SocketChannel player = connect();
+            ByteBuffer welcome = readFrame(player, PartyServer.WELCOME_FRAME_SIZE);
+            assertEquals(PartyServer.MSG_WELCOME, welcome.get());
+            playerIDs[i] = welcome.getInt();
+        }
+
+        List<Integer> candidates = Arrays.asList(3, 7, 1, 9);
+        int questionIndex = mServer.broadcastQuestion(7, candidates);
+
+        for (SocketChannel player : mPlayers) {
+            ByteBuffer question = readFrame(player,
+                    PartyServer.getQuestionFrameSize(candidates.size()));
+            assertEquals(PartyServer.MSG_QUESTION, question.get());
+            assertEquals(questionIndex, question.getInt());
+            assertEquals(candidates.size(), question.get());
+            for (int candidate : candidates) {
+                assertEquals(candidate, question.getInt());
+            }
+            // The answer stays on the server.
+            assertFalse(question.hasRemaining());
+        }
+
+        // Even players answer correctly, odd players pick the wrong composer.
+        for (int i = 0; i < NUM_PLAYERS; i++) {
+            sendAnswer(mPlayers.get(i), questionIndex, i % 2 == 0 ? 7 : 3);
+        }
+        for (int i = 0; i < NUM_PLAYERS; i++) {
+            ByteBuffer score = readFrame(mPlayers.get(i), PartyServer.SCORE_FRAME_SIZE);
+            assertEquals(PartyServer.MSG_SCORE, score.get());
+            assertEquals(questionIndex, score.getInt());
+            int points = score.getInt();
+            if (i % 2 == 0) {
+                assertTrue(points >= 500 && points <= 1000);
+            } else {
+                assertEquals(0, points);
+            }
+            assertEquals(points, score.getInt());
+        }
+
+        Map<Integer, Integer> scores = mServer.getScores();
+        assertEquals(NUM_PLAYERS, scores.size());
+        assertEquals(0, (int) scores.get(playerIDs[1]));
+    }
+
+    @Test
+    public void ignoresRepeatedAndStaleAnswers() throws IOException {
+        SocketChannel player = connect();
+        readFrame(player, PartyServer.WELCOME_FRAME_SIZE);
+
+        List<Integer> candidates = Arrays.asList(0, 1);
+        int first = mServer.broadcastQuestion(0, candidates);
+        readFrame(player, PartyServer.getQuestionFrameSize(candidates.size()));
+        sendAnswer(player, first, 0);
+        int firstPoints = readFrame(player, PartyServer.SCORE_FRAME_SIZE).getInt(5);
+
+        // A second answer to the same question is dropped, so the next score frame must be for
+        // the following question.
+        sendAnswer(player, first, 0);
+        int second = mServer.broadcastQuestion(1, candidates);
+        readFrame(player, PartyServer.getQuestionFrameSize(candidates.size()));
+        sendAnswer(player, first, 1);
+        sendAnswer(player, second, 1);
+
+        ByteBuffer score = readFrame(player, PartyServer.SCORE_FRAME_SIZE);
+        assertEquals(PartyServer.MSG_SCORE, score.get());
+        assertEquals(second, score.getInt());
+        int secondPoints = score.getInt();
+        assertEquals(firstPoints + secondPoints, score.getInt());
+    }
+
+    @Test
+    public void playersTheQuestionNeverReachedCantAnswerIt() throws IOException {
+        SocketChannel early = connect();
+        readFrame(early, PartyServer.WELCOME_FRAME_SIZE);
+
+        List<Integer> candidates = Arrays.asList(0, 1);
+        int first = mServer.broadcastQuestion(0, candidates);
+        readFrame(early, PartyServer.getQuestionFrameSize(candidates.size()));
+
+        // Joining mid-question doesn't send the question, so the answer is a blind guess.
+        SocketChannel late = connect();
+        readFrame(late, PartyServer.WELCOME_FRAME_SIZE);
+        sendAnswer(late, first, 0);
+        // The late answer was sent first, so it has been read by the time the early one is
+        // scored, and well before the next question is dispatched.
+        sendAnswer(early, first, 0);
+        readFrame(early, PartyServer.SCORE_FRAME_SIZE);
+
+        int second = mServer.broadcastQuestion(1, candidates);
+        readFrame(late, PartyServer.getQuestionFrameSize(candidates.size()));
+        sendAnswer(late, second, 1);
+
+        ByteBuffer score = readFrame(late, PartyServer.SCORE_FRAME_SIZE);
+        assertEquals(PartyServer.MSG_SCORE, score.get());
+        assertEquals(second, score.getInt());
+        int points = score.getInt();
+        assertTrue(points >= 500);
+        assertEquals(points, score.getInt());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void broadcastBeforeStartFails() {
+        new PartyServer(0, ANSWER_WINDOW_MILLIS, null).broadcastQuestion(0, Arrays.asList(0, 1));
+    }
+
+    @Test
+    public void speedScoreRewardsFasterAnswers() {
+        assertEquals(1000, QuizUtils.getSpeedScore(2, 2, 0, ANSWER_WINDOW_MILLIS));
+        assertEquals(750, QuizUtils.getSpeedScore(2, 2, ANSWER_WINDOW_MILLIS / 2,
+                ANSWER_WINDOW_MILLIS));
+        assertEquals(500, QuizUtils.getSpeedScore(2, 2, ANSWER_WINDOW_MILLIS * 2,
+                ANSWER_WINDOW_MILLIS));
+        assertEquals(0, QuizUtils.getSpeedScore(2, 5, 0, ANSWER_WINDOW_MILLIS));
+    }
+
+    private SocketChannel connect() throws IOException {
+        SocketChannel player = SocketChannel.open(
+                new InetSocketAddress("127.0.0.1", mServer.getLocalPort()));
+        player.socket().setSoTimeout(READ_TIMEOUT_MILLIS);
+        mPlayers.add(player);
+        return player;
+    }
+
+    private static void sendAnswer(SocketChannel player, int questionIndex, int answerSampleID)
+            throws IOException {
+        ByteBuffer answer = ByteBuffer.allocate(PartyServer.ANSWER_FRAME_SIZE);
+        answer.put(PartyServer.MSG_ANSWER).putInt(questionIndex).putInt(answerSampleID).flip();
+        while (answer.hasRemaining()) {
+            player.write(answer);
+        }
+    }
+
+    /**
+     * Reads through the socket's stream, as reads on the channel itself ignore the timeout.
+     */
+    private static ByteBuffer readFrame(SocketChannel player, int size) throws IOException {
+        byte[] frame = new byte[size];
+        new DataInputStream(player.socket().getInputStream()).readFully(frame);
+        return ByteBuffer.wrap(frame);
+    }
+}
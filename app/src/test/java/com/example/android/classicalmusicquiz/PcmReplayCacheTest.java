@@ -0,0 +1,182 @@
+package com.example.android.classicalmusicquiz;
+
+import android.media.AudioTrack;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Player;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowAudioTrack;
+import org.robolectric.util.ReflectionHelpers;
+
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks what the replay cache captures from the audio sink, and how it restarts the player.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class PcmReplayCacheTest {
+
+    private static final int SAMPLE_RATE_HZ = 44100;
+    private static final int CHANNELS = 2;
+    // 16 bit stereo.
+    private static final int BYTES_PER_SECOND = SAMPLE_RATE_HZ * CHANNELS * 2;
+
+    // What the player was told to do, and how much PCM went to the replay's AudioTrack.
+    private final List<String> mPlayerCalls = new ArrayList<>();
+    private boolean mPlayWhenReady = true;
+    private int mBytesWritten;
+    private final ShadowAudioTrack.OnAudioDataWrittenListener mAudioListener =
+            (track, audioData, format) -> {
+                mBytesWritten += audioData.length;
+                // The shadow replaces the whole write, including the part that marks a static
+                // track as loaded, and play() refuses a track that isn't.
+                AudioTrack audioTrack = ReflectionHelpers.getField(track, "audioTrack");
+                ReflectionHelpers.setField(audioTrack, "mState", AudioTrack.STATE_INITIALIZED);
+            };
+
+    @Before
+    public void setUp() {
+        ShadowAudioTrack.addAudioDataListener(mAudioListener);
+    }
+
+    @After
+    public void tearDown() {
+        ShadowAudioTrack.removeAudioDataListener(mAudioListener);
+    }
+
+    @Test
+    public void captureStopsAtTheCap() {
+        PcmReplayCache cache = new PcmReplayCache(BYTES_PER_SECOND);
+        cache.flush(SAMPLE_RATE_HZ, CHANNELS, C.ENCODING_PCM_16BIT);
+
+        ByteBuffer buffer = pcm(BYTES_PER_SECOND * 3 / 4);
+        cache.handleBuffer(buffer);
+        // The cache reads a copy, leaving the buffer for the audio sink.
+        assertEquals(BYTES_PER_SECOND * 3 / 4, buffer.remaining());
+        assertEquals(750, cache.getCachedDurationMs());
+
+        cache.handleBuffer(pcm(BYTES_PER_SECOND * 3 / 4));
+        cache.handleBuffer(pcm(BYTES_PER_SECOND));
+        assertEquals(1000, cache.getCachedDurationMs());
+    }
+
+    @Test
+    public void seekStopsCapture() {
+        PcmReplayCache cache = new PcmReplayCache(BYTES_PER_SECOND);
+        cache.flush(SAMPLE_RATE_HZ, CHANNELS, C.ENCODING_PCM_16BIT);
+        cache.handleBuffer(pcm(BYTES_PER_SECOND / 10));
+
+        // A second flush is a seek, so later audio isn't part of the opening.
+        cache.flush(SAMPLE_RATE_HZ, CHANNELS, C.ENCODING_PCM_16BIT);
+        cache.handleBuffer(pcm(BYTES_PER_SECOND / 10));
+
+        assertEquals(100, cache.getCachedDurationMs());
+    }
+
+    @Test
+    public void releaseFreesTheCaptureAndStartsOver() {
+        PcmReplayCache cache = new PcmReplayCache(BYTES_PER_SECOND);
+        cache.flush(SAMPLE_RATE_HZ, CHANNELS, C.ENCODING_PCM_16BIT);
+        cache.handleBuffer(pcm(BYTES_PER_SECOND / 2));
+
+        cache.release();
+        assertEquals(0, cache.getCachedDurationMs());
+        assertFalse(cache.restart(player(), () -> { }));
+        assertEquals(Arrays.asList("seekTo[0]"), mPlayerCalls);
+
+        // The next question's first flush starts a new capture.
+        cache.flush(SAMPLE_RATE_HZ, CHANNELS, C.ENCODING_PCM_16BIT);
+        cache.handleBuffer(pcm(BYTES_PER_SECOND / 5));
+        assertEquals(200, cache.getCachedDurationMs());
+    }
+
+    // Robolectric reads the replay's playback head with an API 30 method.
+    @Test
+    @Config(sdk = 30)
+    public void restartReplaysTheOpeningWhileThePlayerWaitsAtItsEnd() {
+        PcmReplayCache cache = new PcmReplayCache(BYTES_PER_SECOND);
+        cache.flush(SAMPLE_RATE_HZ, CHANNELS, C.ENCODING_PCM_16BIT);
+        cache.handleBuffer(pcm(BYTES_PER_SECOND * 3 / 4));
+
+        assertTrue(cache.restart(player(), () -> { }));
+
+        assertTrue(cache.isReplaying());
+        assertEquals(BYTES_PER_SECOND * 3 / 4, mBytesWritten);
+        assertEquals(Arrays.asList("setPlayWhenReady[false]", "seekTo[750]"), mPlayerCalls);
+
+        assertTrue(cache.stopReplay() >= 0);
+        assertFalse(cache.isReplaying());
+        assertEquals(-1, cache.stopReplay());
+    }
+
+    @Test
+    @Config(sdk = 30)
+    public void floatPcmReplays() {
+        PcmReplayCache cache = new PcmReplayCache(BYTES_PER_SECOND * 2);
+        cache.flush(SAMPLE_RATE_HZ, CHANNELS, C.ENCODING_PCM_FLOAT);
+        // Half a second of 32 bit stereo.
+        cache.handleBuffer(pcm(BYTES_PER_SECOND));
+
+        assertTrue(cache.restart(player(), () -> { }));
+
+        assertEquals(BYTES_PER_SECOND, mBytesWritten);
+        assertEquals(Arrays.asList("setPlayWhenReady[false]", "seekTo[500]"), mPlayerCalls);
+        cache.release();
+        assertFalse(cache.isReplaying());
+    }
+
+    @Test
+    public void restartFallsBackToSeeking() {
+        // A paused player stays paused, so it just goes back to the start.
+        PcmReplayCache cache = new PcmReplayCache(BYTES_PER_SECOND);
+        cache.flush(SAMPLE_RATE_HZ, CHANNELS, C.ENCODING_PCM_16BIT);
+        cache.handleBuffer(pcm(BYTES_PER_SECOND / 2));
+        mPlayWhenReady = false;
+
+        assertFalse(cache.restart(player(), () -> { }));
+        assertFalse(cache.isReplaying());
+        assertEquals(Arrays.asList("seekTo[0]"), mPlayerCalls);
+
+        // So does one whose audio the cache can't play, here 5.1.
+        mPlayerCalls.clear();
+        mPlayWhenReady = true;
+        cache = new PcmReplayCache(BYTES_PER_SECOND);
+        cache.flush(SAMPLE_RATE_HZ, 6, C.ENCODING_PCM_16BIT);
+        cache.handleBuffer(pcm(BYTES_PER_SECOND / 2));
+
+        assertFalse(cache.restart(player(), () -> { }));
+        assertEquals(Arrays.asList("seekTo[0]"), mPlayerCalls);
+        assertEquals(0, mBytesWritten);
+    }
+
+    /**
+     * @return A player that records the calls made on it in mPlayerCalls.
+     */
+    private Player player() {
+        return (Player) Proxy.newProxyInstance(Player.class.getClassLoader(),
+                new Class<?>[]{Player.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("getPlayWhenReady")) {
+                        return mPlayWhenReady;
+                    }
+                    mPlayerCalls.add(method.getName() + Arrays.toString(args));
+                    return null;
+                });
+    }
+
+    private static ByteBuffer pcm(int bytes) {
+        return ByteBuffer.allocate(bytes);
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.android.classicalmusicquiz;
+
+import android.os.Looper;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.google.android.exoplayer2.SimpleExoPlayer;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.LooperMode;
+
+import java.time.Duration;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Checks when the question scheduler runs its transition.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class QuestionSchedulerTest {
+
+    private static final int ANSWER_SAMPLE_ID = 7;
+
+    private final QuestionScheduler mScheduler = new QuestionScheduler();
+    private int mTransitions;
+
+    @After
+    public void tearDown() {
+        // Don't leave a handed over player behind for the next test.
+        QuestionScheduler.takePrepared(-1);
+    }
+
+    @Test
+    public void readyBeforeTheMinimumRunsAtTheMinimum() {
+        mScheduler.schedule(500, 2000, () -> mTransitions++);
+        mScheduler.onNextQuestionReady();
+
+        idleFor(499);
+        assertEquals(0, mTransitions);
+        idleFor(1);
+        assertEquals(1, mTransitions);
+        assertEquals(500, mScheduler.getTransitionDelayMillis());
+        idleFor(2000);
+        assertEquals(1, mTransitions);
+    }
+
+    @Test
+    public void readyAfterTheMinimumRunsRightAway() {
+        mScheduler.schedule(500, 2000, () -> mTransitions++);
+
+        idleFor(800);
+        assertEquals(0, mTransitions);
+        mScheduler.onNextQuestionReady();
+        assertEquals(1, mTransitions);
+        assertEquals(800, mScheduler.getTransitionDelayMillis());
+    }
+
+    @Test
+    public void neverReadyRunsAtTheMaximum() {
+        mScheduler.schedule(500, 2000, () -> mTransitions++);
+
+        idleFor(1999);
+        assertEquals(0, mTransitions);
+        idleFor(1);
+        assertEquals(1, mTransitions);
+        assertEquals(2000, mScheduler.getTransitionDelayMillis());
+    }
+
+    @Test
+    public void cancelledNeverRuns() {
+        mScheduler.schedule(500, 2000, () -> mTransitions++);
+        mScheduler.onNextQuestionReady();
+        mScheduler.cancel();
+
+        idleFor(3000);
+        mScheduler.onNextQuestionReady();
+        assertEquals(0, mTransitions);
+        assertEquals(-1, mScheduler.getTransitionDelayMillis());
+    }
+
+    @Test
+    public void handedOverPlayerWaitsForTheNextQuestion() {
+        handOver();
+
+        idleFor(QuestionScheduler.HANDOVER_TIMEOUT_MILLIS - 1);
+        QuestionScheduler.Prepared prepared = QuestionScheduler.takePrepared(ANSWER_SAMPLE_ID);
+        assertNotNull(prepared);
+        prepared.release();
+    }
+
+    @Test
+    public void unclaimedPlayerIsReleased() {
+        handOver();
+
+        idleFor(QuestionScheduler.HANDOVER_TIMEOUT_MILLIS);
+        assertNull(QuestionScheduler.takePrepared(ANSWER_SAMPLE_ID));
+    }
+
+    /**
+     * Runs a transition that hands a prepared player over to the next question.
+     */
+    private void handOver() {
+        SimpleExoPlayer player =
+                new SimpleExoPlayer.Builder(ApplicationProvider.getApplicationContext()).build();
+        mScheduler.schedule(500, 2000, () -> mTransitions++);
+        mScheduler.prepare(new QuestionScheduler.Prepared(player, null, ANSWER_SAMPLE_ID));
+        mScheduler.onNextQuestionReady();
+        idleFor(500);
+        assertEquals(1, mTransitions);
+    }
+
+    private static void idleFor(long millis) {
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(millis));
+    }
+}
@@ -0,0 +1,274 @@
+package com.example.android.classicalmusicquiz;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.Looper;
+import android.os.StrictMode;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.LooperMode;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.security.Permission;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Plays full games through QuizActivity on the JVM and fails if a question transition goes over
+ * its budget. Lower a budget when a hot path gets cheaper, so the gain can't silently regress.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class QuizActivityPerformanceTest {
+
+    // The catalog is parsed once per process, and setUp has already parsed it.
+    private static final int MAX_CATALOG_PARSES_PER_GAME = 0;
+    // File reads and writes under the app's data directory on the main thread, plus StrictMode
+    // disk violations, which is how a SharedPreferences load the main thread waits for shows up.
+    private static final int MAX_MAIN_THREAD_DISK_ACCESSES_PER_GAME = 0;
+    // Current score plus high score.
+    private static final int MAX_PREFERENCE_WRITES_PER_ANSWER = 2;
+    // Bytes allocated on the main thread from an answer to the next question being resumed.
+    // The JVM counts bytes rather than objects, which tracks allocation churn just as well.
+    // The first game warms up class loading and the JIT, and the most any transition of the
+    // second game allocates is the baseline. No later transition may go over the baseline by
+    // more than this fraction.
+    private static final double ALLOCATION_MARGIN = 0.25;
+    private static final int WARM_UP_GAMES = 1;
+    // The current question's player, plus the next question's while the answer is shown.
+    private static final int MAX_LIVE_PLAYBACK_THREADS = 2;
+    private static final String PLAYBACK_THREAD_NAME = "ExoPlayer:Playback";
+    private static final long THREAD_EXIT_TIMEOUT_MILLIS = 1000;
+    private static final int GAMES = 4;
+
+    private final int[] mPreferenceWrites = new int[1];
+    // SharedPreferences only keeps a weak reference to its listeners.
+    private final SharedPreferences.OnSharedPreferenceChangeListener mPreferenceListener =
+            (preferences, key) -> mPreferenceWrites[0]++;
+
+    private Context mContext;
+    private SharedPreferences mPreferences;
+    private DiskAccessCounter mDiskAccessCounter;
+    private SecurityManager mPreviousSecurityManager;
+    private StrictMode.ThreadPolicy mPreviousThreadPolicy;
+    private long mBaselineAllocatedBytes;
+
+    @Before
+    public void setUp() throws InterruptedException {
+        mContext = ApplicationProvider.getApplicationContext();
+        // The catalog is loaded before any game starts. Warm it here, off the main thread, so
+        // it doesn't count against the games.
+        Thread warmUp = new Thread(() -> Sample.getBundledSamples(mContext));
+        warmUp.start();
+        warmUp.join();
+
+        mPreferences = mContext.getSharedPreferences(
+                mContext.getString(R.string.preference_file_key), Context.MODE_PRIVATE);
+        mPreferences.registerOnSharedPreferenceChangeListener(mPreferenceListener);
+
+        mDiskAccessCounter = new DiskAccessCounter(Looper.getMainLooper().getThread(),
+                mContext.getApplicationInfo().dataDir);
+        mPreviousSecurityManager = System.getSecurityManager();
+        System.setSecurityManager(mDiskAccessCounter);
+        mPreviousThreadPolicy = StrictMode.getThreadPolicy();
+        StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder()
+                .detectDiskReads()
+                .detectDiskWrites()
+                .penaltyListener(Runnable::run, violation -> mDiskAccessCounter.record(
+                        violation.getClass().getSimpleName()))
+                .build());
+    }
+
+    @After
+    public void tearDown() {
+        StrictMode.setThreadPolicy(mPreviousThreadPolicy);
+        System.setSecurityManager(mPreviousSecurityManager);
+        mPreferences.unregisterOnSharedPreferenceChangeListener(mPreferenceListener);
+    }
+
+    @Test
+    public void fullGamesStayWithinBudgets() {
+        for (int game = 0; game < GAMES; game++) {
+            playGame(game);
+        }
+    }
+
+    private void playGame(int game) {
+        int parsesBefore = Sample.getCatalogParseCount();
+        mDiskAccessCounter.start();
+        int questions = 0;
+        long maxAllocated = 0;
+
+        ActivityController<QuizActivity> controller = Robolectric.buildActivity(
+                QuizActivity.class, new Intent(mContext, QuizActivity.class)).setup();
+
+        while (true) {
+            QuizActivity activity = controller.get();
+            Intent next = shadowOf(activity).getNextStartedActivity();
+            if (next != null && MainActivity.class.getName()
+                    .equals(next.getComponent().getClassName())) {
+                controller.pause().stop().destroy();
+                break;
+            }
+
+            long allocatedBefore = allocatedBytes();
+
+            mPreferenceWrites[0] = 0;
+            activity.findViewById(R.id.buttonA).performClick();
+            shadowOf(Looper.getMainLooper()).idle();
+            assertTrue("Answer " + questions + " wrote preferences " + mPreferenceWrites[0]
+                            + " times",
+                    mPreferenceWrites[0] <= MAX_PREFERENCE_WRITES_PER_ANSWER);
+
+            shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(2000));
+            next = shadowOf(activity).getNextStartedActivity();
+            assertNotNull("No question followed answer " + questions, next);
+            controller.pause().stop().destroy();
+            controller = Robolectric.buildActivity(QuizActivity.class, next).setup();
+
+            long allocated = allocatedBytes() - allocatedBefore;
+            maxAllocated = Math.max(maxAllocated, allocated);
+            if (game > WARM_UP_GAMES) {
+                long budget = (long) (mBaselineAllocatedBytes * (1 + ALLOCATION_MARGIN));
+                assertTrue("Transition " + questions + " of game " + game + " allocated "
+                                + allocated + " bytes, over the budget of " + budget,
+                        allocated <= budget);
+            }
+            int playbackThreads = countLivePlaybackThreads();
+            assertTrue("Transition " + questions + " left " + playbackThreads
+                            + " player threads running",
+                    playbackThreads <= MAX_LIVE_PLAYBACK_THREADS);
+            questions++;
+        }
+
+        assertTrue("The game ended without a question", questions > 0);
+        System.out.println("Game " + game + ": " + questions + " questions, at most "
+                + maxAllocated + " bytes allocated by a transition");
+        if (game == WARM_UP_GAMES) {
+            mBaselineAllocatedBytes = maxAllocated;
+        }
+        // StrictMode reports violations from the main looper.
+        shadowOf(Looper.getMainLooper()).idle();
+        int parses = Sample.getCatalogParseCount() - parsesBefore;
+        assertTrue("The catalog was parsed " + parses + " times in one game",
+                parses <= MAX_CATALOG_PARSES_PER_GAME);
+        List<String> diskAccesses = mDiskAccessCounter.stop();
+        assertTrue("The main thread went to disk " + diskAccesses.size() + " times in one game: "
+                        + diskAccesses,
+                diskAccesses.size() <= MAX_MAIN_THREAD_DISK_ACCESSES_PER_GAME);
+    }
+
+    /**
+     * Counts the player threads still running, giving released players a moment to stop theirs.
+     */
+    private static int countLivePlaybackThreads() {
+        long deadline = System.currentTimeMillis() + THREAD_EXIT_TIMEOUT_MILLIS;
+        int count;
+        do {
+            count = 0;
+            for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                if (thread.isAlive() && PLAYBACK_THREAD_NAME.equals(thread.getName())) {
+                    count++;
+                }
+            }
+            if (count <= MAX_LIVE_PLAYBACK_THREADS) {
+                break;
+            }
+            Thread.yield();
+        } while (System.currentTimeMillis() < deadline);
+        return count;
+    }
+
+    /**
+     * Records the files the main thread reads, writes or deletes under the app's data directory,
+     * where databases and files live. Robolectric's file access never reaches StrictMode, so it
+     * is caught here instead. Preference files are left to StrictMode, because Robolectric
+     * writes applied preferences on the calling thread, which a device doesn't. Every other
+     * permission is granted.
+     */
+    private static final class DiskAccessCounter extends SecurityManager {
+        private final Thread mMainThread;
+        private final String mDataDirectory;
+        private final String mPreferencesDirectory;
+        private final List<String> mAccesses = Collections.synchronizedList(new ArrayList<>());
+        private volatile boolean mCounting;
+
+        DiskAccessCounter(Thread mainThread, String dataDirectory) {
+            mMainThread = mainThread;
+            mDataDirectory = dataDirectory;
+            mPreferencesDirectory = new File(dataDirectory, "shared_prefs").getPath();
+        }
+
+        void start() {
+            mAccesses.clear();
+            mCounting = true;
+        }
+
+        /**
+         * @return The accesses recorded since start().
+         */
+        List<String> stop() {
+            mCounting = false;
+            synchronized (mAccesses) {
+                return new ArrayList<>(mAccesses);
+            }
+        }
+
+        void record(String access) {
+            if (mCounting && Thread.currentThread() == mMainThread) {
+                mAccesses.add(access);
+            }
+        }
+
+        private void recordFile(String file) {
+            if (file.startsWith(mDataDirectory) && !file.startsWith(mPreferencesDirectory)) {
+                record(file);
+            }
+        }
+
+        @Override
+        public void checkRead(String file) {
+            recordFile(file);
+        }
+
+        @Override
+        public void checkWrite(String file) {
+            recordFile(file);
+        }
+
+        @Override
+        public void checkDelete(String file) {
+            recordFile(file);
+        }
+
+        @Override
+        public void checkPermission(Permission permission) {
+        }
+
+        @Override
+        public void checkPermission(Permission permission, Object context) {
+        }
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.android.classicalmusicquiz;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for catalog snapshots.
+ */
+public class SampleCatalogTest {
+
+    private static final Sample BACH = new Sample(0, "Johann Sebastian Bach", "Toccata", null,
+            "bach");
+    private static final Sample MOZART = new Sample(2, "Wolfgang Amadeus Mozart",
+            "Rondo Alla Turca", null, "mozart");
+    private static final Sample USER_BACH = new Sample(0, "Someone Else", "Not Bach", null, null);
+    private static final Sample USER_SATIE = new Sample(100, "Erik Satie", "Gymnop\u00e9die No. 1",
+            null, null);
+
+    @Test
+    public void firstSampleWinsADuplicateID() {
+        SampleCatalog catalog = new SampleCatalog(Arrays.asList(BACH, MOZART, USER_BACH,
+                USER_SATIE), true);
+
+        assertSame(BACH, catalog.getSampleByID(0));
+        assertEquals(Arrays.asList(BACH, MOZART, USER_SATIE), catalog.getSamples());
+        assertEquals(Arrays.asList(0, 2, 100), catalog.getAllSampleIDs());
+    }
+
+    @Test
+    public void unknownIDHasNoSample() {
+        SampleCatalog catalog = new SampleCatalog(Arrays.asList(BACH, MOZART), false);
+
+        assertNull(catalog.getSampleByID(1));
+    }
+
+    @Test
+    public void bundledCatalogIsRankedAsBundled() {
+        SampleCatalog catalog = new SampleCatalog(Arrays.asList(BACH, MOZART), false);
+
+        assertEquals(ScoreStore.CATALOG_BUNDLED, catalog.getKey());
+    }
+
+    @Test
+    public void mergedKeyDependsOnTheSamplesNotTheirOrder() {
+        List<Sample> samples = Arrays.asList(BACH, MOZART, USER_SATIE);
+        String key = new SampleCatalog(samples, true).getKey();
+
+        assertNotEquals(ScoreStore.CATALOG_BUNDLED, key);
+        assertEquals(key, new SampleCatalog(Arrays.asList(USER_SATIE, MOZART, BACH), true)
+                .getKey());
+        // A duplicate that loses doesn't change which samples can be asked.
+        assertEquals(key, new SampleCatalog(Arrays.asList(BACH, USER_BACH, MOZART, USER_SATIE),
+                true).getKey());
+        assertNotEquals(key, new SampleCatalog(Arrays.asList(BACH, USER_SATIE), true).getKey());
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.android.classicalmusicquiz;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the practice mode search index.
+ */
+public class SampleSearchIndexTest {
+
+    private SampleSearchIndex mIndex;
+    private final int[] mResults = new int[16];
+
+    @Before
+    public void setUp() {
+        List<Sample> samples = Arrays.asList(
+                new Sample(0, "Johann Sebastian Bach", "Toccata and Fugue in D minor", null, null),
+                new Sample(3, "Fr\u00e9d\u00e9ric Chopin", "Nocturne Op. 9 No. 2", null, null),
+                new Sample(7, "Johannes Brahms", "Hungarian Dance No. 5", null, null),
+                new Sample(10, "Franz Schubert", "String Quarter No. 14", null, null));
+        mIndex = new SampleSearchIndex(samples);
+    }
+
+    @Test
+    public void matchesAnyWordWithoutAccentsOrCase() {
+        assertArrayEquals(new int[]{1}, search("CHOP"));
+        assertArrayEquals(new int[]{1}, search("frederic"));
+        assertArrayEquals(new int[]{1}, search("Fr\u00e9d\u00e9ric  Ch"));
+        assertArrayEquals(new int[]{3}, search("quar"));
+        assertArrayEquals(new int[]{}, search("opin"));
+    }
+
+    @Test
+    public void reportsEachSampleOnce() {
+        // "johann" matches both a composer word and part of "johannes".
+        int[] results = search("johann");
+        Arrays.sort(results);
+        assertArrayEquals(new int[]{0, 2}, results);
+
+        // "no" matches two words of the Chopin title.
+        results = search("no");
+        Arrays.sort(results);
+        assertArrayEquals(new int[]{1, 2, 3}, results);
+    }
+
+    @Test
+    public void narrowsAndWidensAsTheQueryChanges() {
+        String[] keystrokes = {"f", "fr", "fra", "fran", "fra", "fr", "fre", "", "s"};
+        for (String query : keystrokes) {
+            int[] expected = linearSearch(query);
+            int[] actual = search(query);
+            Arrays.sort(actual);
+            assertArrayEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void foldsAccentsAndPunctuation() {
+        assertEquals("frederic chopin", SampleSearchIndex.fold("Fr\u00e9d\u00e9ric Chopin"));
+        assertEquals("nocturne op 9 no 2", SampleSearchIndex.fold("Nocturne Op. 9 No. 2"));
+    }
+
+    private int[] search(String query) {
+        int count = mIndex.search(query, mResults);
+        return Arrays.copyOf(mResults, count);
+    }
+
+    private int[] linearSearch(String query) {
+        String folded = SampleSearchIndex.fold(query);
+        ArrayList<Integer> matches = new ArrayList<>();
+        for (int position = 0; position < 4 && !folded.isEmpty(); position++) {
+            Sample sample = mIndex.getSample(position);
+            String text = " " + SampleSearchIndex.fold(sample.getComposer()) + " | "
+                    + SampleSearchIndex.fold(sample.getTitle());
+            if (text.contains(" " + folded)) {
+                matches.add(position);
+            }
+        }
+        int[] expected = new int[matches.size()];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = matches.get(i);
+        }
+        return expected;
+    }
+}
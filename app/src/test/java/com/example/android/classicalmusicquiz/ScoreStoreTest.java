@@ -0,0 +1,157 @@
+package com.example.android.classicalmusicquiz;
+
+import android.os.Looper;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.LooperMode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Checks the SQLite leaderboard: batch inserts, ranking and keyset paging.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class ScoreStoreTest {
+
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    private ScoreStore mStore;
+    private Thread.UncaughtExceptionHandler mPreviousHandler;
+    private final List<Throwable> mUncaught = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        mStore = new ScoreStore(ApplicationProvider.getApplicationContext());
+        // On a device an exception escaping the store's thread kills the app.
+        mPreviousHandler = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler((thread, e) -> {
+            synchronized (mUncaught) {
+                mUncaught.add(e);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        Thread.setDefaultUncaughtExceptionHandler(mPreviousHandler);
+        synchronized (mUncaught) {
+            assertTrue("Uncaught " + mUncaught, mUncaught.isEmpty());
+        }
+    }
+
+    @Test
+    public void batchInsertRecordsEveryEntry() {
+        List<ScoreStore.Entry> entries = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            entries.add(entry(ScoreStore.MODE_CLASSIC, i % 11));
+        }
+        for (int i = 0; i < 40; i++) {
+            entries.add(entry(ScoreStore.MODE_SPEED_ROUND, i));
+        }
+        mStore.recordScores(entries);
+
+        assertEquals(60, getPage(ScoreStore.MODE_CLASSIC, null, 1000).size());
+        assertEquals(40, getPage(ScoreStore.MODE_SPEED_ROUND, null, 1000).size());
+        assertTrue(getPage("daily-20261018", null, 1000).isEmpty());
+    }
+
+    @Test
+    public void topScoresComeBestFirst() {
+        mStore.recordScores(Arrays.asList(entry(ScoreStore.MODE_CLASSIC, 3),
+                entry(ScoreStore.MODE_CLASSIC, 9), entry(ScoreStore.MODE_CLASSIC, 1),
+                entry(ScoreStore.MODE_CLASSIC, 7), entry(ScoreStore.MODE_CLASSIC, 5)));
+
+        List<ScoreStore.Entry> top = getPage(ScoreStore.MODE_CLASSIC, null, 3);
+
+        assertEquals(3, top.size());
+        assertEquals(9, top.get(0).mScore);
+        assertEquals(7, top.get(1).mScore);
+        assertEquals(5, top.get(2).mScore);
+    }
+
+    @Test
+    public void keysetPagesContinueAcrossEqualScores() {
+        // Page boundaries fall inside the run of equal scores.
+        List<ScoreStore.Entry> entries = new ArrayList<>();
+        entries.add(entry(ScoreStore.MODE_CLASSIC, 8));
+        for (int i = 0; i < 10; i++) {
+            entries.add(entry(ScoreStore.MODE_CLASSIC, 5));
+        }
+        entries.add(entry(ScoreStore.MODE_CLASSIC, 2));
+        mStore.recordScores(entries);
+
+        List<ScoreStore.Entry> all = new ArrayList<>();
+        ScoreStore.Entry last = null;
+        List<ScoreStore.Entry> page;
+        do {
+            page = getPage(ScoreStore.MODE_CLASSIC, last, 3);
+            all.addAll(page);
+            if (!page.isEmpty()) {
+                last = page.get(page.size() - 1);
+            }
+        } while (page.size() == 3);
+
+        assertEquals(entries.size(), all.size());
+        HashSet<Long> ids = new HashSet<>();
+        for (int i = 0; i < all.size(); i++) {
+            assertTrue(ids.add(all.get(i).mId));
+            if (i > 0) {
+                ScoreStore.Entry previous = all.get(i - 1);
+                assertTrue(previous.mScore > all.get(i).mScore
+                        || (previous.mScore == all.get(i).mScore
+                        && previous.mId < all.get(i).mId));
+            }
+        }
+        assertEquals(8, all.get(0).mScore);
+        assertEquals(2, all.get(all.size() - 1).mScore);
+    }
+
+    @Test
+    public void brokenDatabaseLosesScoresWithoutCrashing() {
+        ScoreDbHelper dbHelper = new ScoreDbHelper(ApplicationProvider.getApplicationContext());
+        dbHelper.getWritableDatabase().execSQL("DROP TABLE " + ScoreDbHelper.TABLE_SCORES);
+        dbHelper.close();
+
+        mStore.recordScores(Arrays.asList(entry(ScoreStore.MODE_CLASSIC, 3),
+                entry(ScoreStore.MODE_CLASSIC, 9)));
+
+        // The query fails too, and still answers.
+        assertTrue(getPage(ScoreStore.MODE_CLASSIC, null, 10).isEmpty());
+    }
+
+    private static ScoreStore.Entry entry(String mode, int score) {
+        return new ScoreStore.Entry(ScoreStore.CATALOG_BUNDLED, mode, null, score, 10,
+                System.currentTimeMillis());
+    }
+
+    /**
+     * Runs a leaderboard query and waits for its result to reach the main thread.
+     */
+    private List<ScoreStore.Entry> getPage(String mode, ScoreStore.Entry after, int limit) {
+        List<List<ScoreStore.Entry>> result = new ArrayList<>();
+        mStore.getTopScores(ScoreStore.CATALOG_BUNDLED, mode, after, limit, result::add);
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (result.isEmpty()) {
+            assertTrue("No result after " + TIMEOUT_MILLIS + " ms",
+                    System.currentTimeMillis() < deadline);
+            shadowOf(Looper.getMainLooper()).idle();
+            Thread.yield();
+        }
+        return result.get(0);
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.android.classicalmusicquiz;
+
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks how user catalogs are merged into the published catalog. Reloads run on the test
+ * thread rather than the watcher's executor.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class UserCatalogWatcherTest {
+
+    private Context mContext;
+    private File mDirectory;
+    private UserCatalogWatcher mWatcher;
+    private int mBundledCount;
+
+    @Before
+    public void setUp() {
+        mContext = ApplicationProvider.getApplicationContext();
+        mDirectory = new File(mContext.getFilesDir(), "test_catalogs");
+        assertTrue(mDirectory.mkdirs());
+        mWatcher = new UserCatalogWatcher(mContext, mDirectory);
+        mBundledCount = Sample.getBundledSamples(mContext).size();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+        Sample.publishCatalog(new SampleCatalog(Sample.getBundledSamples(mContext), false));
+    }
+
+    @Test
+    public void reloadPublishesBundledPlusUserSamples() throws IOException {
+        writeCatalog("a.exolist.json", sample(1000, "Erik Satie"),
+                sample(1001, "Gabriel Faur\u00e9"));
+
+        mWatcher.reload();
+
+        SampleCatalog catalog = Sample.getCatalog(mContext);
+        assertEquals(mBundledCount + 2, catalog.getSamples().size());
+        assertEquals("Erik Satie", catalog.getSampleByID(1000).getComposer());
+        assertNotEquals(ScoreStore.CATALOG_BUNDLED, catalog.getKey());
+
+        // Removing the file takes its samples out again.
+        assertTrue(new File(mDirectory, "a.exolist.json").delete());
+        mWatcher.reload();
+
+        catalog = Sample.getCatalog(mContext);
+        assertEquals(mBundledCount, catalog.getSamples().size());
+        assertNull(catalog.getSampleByID(1000));
+        assertEquals(ScoreStore.CATALOG_BUNDLED, catalog.getKey());
+    }
+
+    @Test
+    public void unchangedFilesAreNotParsedAgain() throws IOException {
+        writeCatalog("a.exolist.json", sample(1000, "Erik Satie"));
+        writeCatalog("b.exolist.json", sample(1001, "Gabriel Faur\u00e9"));
+
+        mWatcher.reload();
+        assertEquals(2, mWatcher.getParseCount());
+
+        mWatcher.reload();
+        assertEquals(2, mWatcher.getParseCount());
+
+        // A different size is enough to tell the file changed, whatever its mtime.
+        writeCatalog("b.exolist.json", sample(1001, "Gabriel Faur\u00e9"),
+                sample(1002, "Claude Debussy"));
+        mWatcher.reload();
+        assertEquals(3, mWatcher.getParseCount());
+        assertEquals(mBundledCount + 3, Sample.getCatalog(mContext).getSamples().size());
+    }
+
+    @Test
+    public void duplicateIDsKeepTheFirstSample() throws IOException {
+        int bundledID = Sample.getBundledSamples(mContext).get(0).getSampleID();
+        String bundledComposer = Sample.getBundledSamples(mContext).get(0).getComposer();
+        writeCatalog("a.exolist.json", sample(bundledID, "Not The Bundled Composer"),
+                sample(1000, "Erik Satie"));
+        writeCatalog("b.exolist.json", sample(1000, "Not Satie"));
+
+        mWatcher.reload();
+
+        // Bundled samples come first, then user catalogs in file name order.
+        SampleCatalog catalog = Sample.getCatalog(mContext);
+        assertEquals(bundledComposer, catalog.getSampleByID(bundledID).getComposer());
+        assertEquals("Erik Satie", catalog.getSampleByID(1000).getComposer());
+        assertEquals(mBundledCount + 1, catalog.getSamples().size());
+    }
+
+    @Test
+    public void malformedEntriesAndFilesAreSkipped() throws IOException {
+        writeCatalog("a.exolist.json", sample(1000, "Erik Satie"));
+        writeCatalog("b.exolist.json",
+                "{\"id\": \"not a number\", \"uri\": \"file:///music/x.mp3\"}",
+                "{\"id\": 1001, \"composer\": \"No Uri\"}",
+                "{\"id\": -5, \"uri\": \"file:///music/negative.mp3\"}",
+                "{\"id\": 1002, \"uri\": \"\"}",
+                "\"not an object\"",
+                "{\"id\": 1003, \"composer\": [\"Claude Debussy\"], \"duration\": \"long\","
+                        + " \"uri\": \"file:///music/1003.mp3\"}");
+        try (OutputStream out = new FileOutputStream(new File(mDirectory, "c.exolist.json"))) {
+            out.write("[{\"id\": 1004, \"uri\": ".getBytes(StandardCharsets.UTF_8));
+        }
+
+        mWatcher.reload();
+
+        SampleCatalog catalog = Sample.getCatalog(mContext);
+        assertEquals(mBundledCount + 2, catalog.getSamples().size());
+        assertEquals("Erik Satie", catalog.getSampleByID(1000).getComposer());
+        assertNull(catalog.getSampleByID(1001));
+        assertNull(catalog.getSampleByID(1002));
+        assertNull(catalog.getSampleByID(1004));
+        // A field of the wrong type is ignored, the rest of the entry is kept.
+        Sample sample = catalog.getSampleByID(1003);
+        assertNull(sample.getComposer());
+        assertEquals(0, sample.getDurationMs());
+        assertEquals("file:///music/1003.mp3", sample.getUri());
+    }
+
+    private static String sample(int id, String composer) {
+        return "{\"id\": " + id + ", \"name\": \"Piece " + id + "\", \"composer\": \""
+                + composer + "\", \"uri\": \"file:///music/" + id + ".mp3\"}";
+    }
+
+    private void writeCatalog(String name, String... samples) throws IOException {
+        try (OutputStream out = new FileOutputStream(new File(mDirectory, name))) {
+            out.write(("[" + String.join(", ", samples) + "]")
+                    .getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,288 @@
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package com.example.android.classicalmusicquiz.gradle;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+
+/**
+ * Cuts an mp3 down to its opening by copying whole MPEG audio frames, so nothing is decoded or
+ * encoded again.
+ *
+ * A leading ID3v2 tag is kept as it is. A Xing, Info or VBRI header frame is dropped, because
+ * the frame and byte counts in it describe the whole file and would give players the wrong
+ * duration. Anything after the excerpt, including an ID3v1 tag, is dropped.
+ */
+final class Mp3Trimmer {
+
+    private static final int HEADER_SIZE = 4;
+    private static final int ID3V2_HEADER_SIZE = 10;
+
+    private static final int VERSION_2_5 = 0;
+    private static final int VERSION_1 = 3;
+    private static final int LAYER_3 = 1;
+    private static final int LAYER_2 = 2;
+    private static final int LAYER_1 = 3;
+
+    // Bitrates in kbit/s by bitrate index: MPEG-1 layers I, II and III, then MPEG-2 and 2.5
+    // layer I, then MPEG-2 and 2.5 layers II and III.
+    private static final int[][] BITRATES = {
+            {0, 32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416, 448},
+            {0, 32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384},
+            {0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320},
+            {0, 32, 48, 56, 64, 80, 96, 112, 128, 144, 160, 176, 192, 224, 256},
+            {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160}};
+    private static final int[] MPEG1_SAMPLE_RATES = {44100, 48000, 32000};
+
+    /**
+     * What trimming a file did.
+     */
+    static final class Result {
+        final long mInputBytes;
+        final long mOutputBytes;
+        final int mFrames;
+        final long mExcerptMillis;
+
+        Result(long inputBytes, long outputBytes, int frames, long excerptMillis) {
+            mInputBytes = inputBytes;
+            mOutputBytes = outputBytes;
+            mFrames = frames;
+            mExcerptMillis = excerptMillis;
+        }
+    }
+
+    private Mp3Trimmer() {
+    }
+
+    /**
+     * Writes the opening of an mp3 to a new file.
+     * @param input The mp3 to trim.
+     * @param output Where to write the excerpt.
+     * @param excerptMillis How much audio to keep. The excerpt ends at the first frame boundary
+     *                      at or after this, or at the end of the file.
+     * @return What was written.
+     * @throws IOException Exception thrown if the file can't be read or written, or has no
+     * MPEG audio frames.
+     */
+    static Result trim(File input, File output, long excerptMillis) throws IOException {
+        byte[] data = Files.readAllBytes(input.toPath());
+        int tagEnd = getId3v2End(data);
+
+        int position = findFrame(data, tagEnd, -1);
+        if (position < 0) {
+            throw new IOException("No MPEG audio frames in " + input);
+        }
+        int firstHeader = readInt(data, position);
+        int sampleRate = getSampleRate(firstHeader);
+
+        try (OutputStream out = new FileOutputStream(output)) {
+            out.write(data, 0, tagEnd);
+            long written = tagEnd;
+            long samples = 0;
+            int frames = 0;
+            long excerptSamples = excerptMillis * sampleRate / 1000;
+            boolean first = true;
+            while (position >= 0 && samples < excerptSamples) {
+                int header = readInt(data, position);
+                int frameSize = getFrameSize(header);
+                if (!(first && isInfoFrame(data, position, header))) {
+                    out.write(data, position, frameSize);
+                    written += frameSize;
+                    samples += getSamplesPerFrame(header);
+                    frames++;
+                }
+                first = false;
+                // A frame right where the last one ended is trusted as it is. Only after junk
+                // does the next one have to be found, and checked against the one after it.
+                int next = position + frameSize;
+                position = isFrameAt(data, next, firstHeader)
+                        ? next : findFrame(data, next, firstHeader);
+            }
+            return new Result(data.length, written, frames, samples * 1000 / sampleRate);
+        }
+    }
+
+    /**
+     * @return The offset of the first byte after a leading ID3v2 tag, or 0 if there isn't one.
+     */
+    private static int getId3v2End(byte[] data) {
+        if (data.length < ID3V2_HEADER_SIZE
+                || data[0] != 'I' || data[1] != 'D' || data[2] != '3') {
+            return 0;
+        }
+        // The size is stored as four 7 bit bytes, and doesn't count the header or footer.
+        int size = (data[6] & 0x7f) << 21 | (data[7] & 0x7f) << 14
+                | (data[8] & 0x7f) << 7 | (data[9] & 0x7f);
+        boolean hasFooter = (data[5] & 0x10) != 0;
+        int end = ID3V2_HEADER_SIZE + size + (hasFooter ? ID3V2_HEADER_SIZE : 0);
+        return Math.min(end, data.length);
+    }
+
+    /**
+     * Finds the next frame at or after an offset, skipping any junk between frames. A header is
+     * only taken as a frame if the frame fits in the file and is followed by another frame or
+     * the end of the file, so a stray sync pattern isn't mistaken for one.
+     * @param like A header the frame must match in version, layer and sample rate, or -1.
+     * @return The offset of the frame, or -1 if there are no more frames.
+     */
+    private static int findFrame(byte[] data, int offset, int like) {
+        for (int i = offset; i + HEADER_SIZE <= data.length; i++) {
+            if ((data[i] & 0xff) != 0xff) {
+                continue;
+            }
+            int header = readInt(data, i);
+            if (!isValidHeader(header) || (like != -1 && !isSameStream(header, like))) {
+                continue;
+            }
+            int next = i + getFrameSize(header);
+            if (next > data.length) {
+                continue;
+            }
+            if (next + HEADER_SIZE > data.length) {
+                return i;
+            }
+            int nextHeader = readInt(data, next);
+            if (isValidHeader(nextHeader) && isSameStream(nextHeader, header)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return true if a whole frame of the same stream starts at the offset.
+     */
+    private static boolean isFrameAt(byte[] data, int offset, int like) {
+        if (offset + HEADER_SIZE > data.length) {
+            return false;
+        }
+        int header = readInt(data, offset);
+        return isValidHeader(header) && isSameStream(header, like)
+                && offset + getFrameSize(header) <= data.length;
+    }
+
+    private static boolean isValidHeader(int header) {
+        return (header & 0xffe00000) == 0xffe00000
+                && getVersion(header) != 1
+                && getLayer(header) != 0
+                && getBitrateIndex(header) != 0
+                && getBitrateIndex(header) != 15
+                && getSampleRateIndex(header) != 3;
+    }
+
+    private static boolean isSameStream(int header, int other) {
+        // Version, layer and sample rate never change within a stream.
+        int mask = 0x001e0c00;
+        return (header & mask) == (other & mask);
+    }
+
+    /**
+     * @return true if the frame holds a Xing, Info or VBRI header rather than audio.
+     */
+    private static boolean isInfoFrame(byte[] data, int position, int header) {
+        boolean mono = (header >>> 6 & 3) == 3;
+        int sideInfoSize = getVersion(header) == VERSION_1 ? (mono ? 17 : 32) : (mono ? 9 : 17);
+        return hasTag(data, position + HEADER_SIZE + sideInfoSize, "Xing")
+                || hasTag(data, position + HEADER_SIZE + sideInfoSize, "Info")
+                || hasTag(data, position + HEADER_SIZE + 32, "VBRI");
+    }
+
+    private static boolean hasTag(byte[] data, int offset, String tag) {
+        if (offset + tag.length() > data.length) {
+            return false;
+        }
+        for (int i = 0; i < tag.length(); i++) {
+            if (data[offset + i] != tag.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int getFrameSize(int header) {
+        int bitrate = getBitrate(header) * 1000;
+        int sampleRate = getSampleRate(header);
+        int padding = header >>> 9 & 1;
+        switch (getLayer(header)) {
+            case LAYER_1:
+                return (12 * bitrate / sampleRate + padding) * 4;
+            case LAYER_2:
+                return 144 * bitrate / sampleRate + padding;
+            default:
+                return (getVersion(header) == VERSION_1 ? 144 : 72) * bitrate / sampleRate
+                        + padding;
+        }
+    }
+
+    private static int getSamplesPerFrame(int header) {
+        switch (getLayer(header)) {
+            case LAYER_1:
+                return 384;
+            case LAYER_2:
+                return 1152;
+            default:
+                return getVersion(header) == VERSION_1 ? 1152 : 576;
+        }
+    }
+
+    private static int getBitrate(int header) {
+        int layer = getLayer(header);
+        int table;
+        if (getVersion(header) == VERSION_1) {
+            table = layer == LAYER_1 ? 0 : layer == LAYER_2 ? 1 : 2;
+        } else {
+            table = layer == LAYER_1 ? 3 : 4;
+        }
+        return BITRATES[table][getBitrateIndex(header)];
+    }
+
+    private static int getSampleRate(int header) {
+        int sampleRate = MPEG1_SAMPLE_RATES[getSampleRateIndex(header)];
+        switch (getVersion(header)) {
+            case VERSION_1:
+                return sampleRate;
+            case VERSION_2_5:
+                return sampleRate / 4;
+            default:
+                return sampleRate / 2;
+        }
+    }
+
+    private static int getVersion(int header) {
+        return header >>> 19 & 3;
+    }
+
+    private static int getLayer(int header) {
+        return header >>> 17 & 3;
+    }
+
+    private static int getBitrateIndex(int header) {
+        return header >>> 12 & 15;
+    }
+
+    private static int getSampleRateIndex(int header) {
+        return header >>> 10 & 3;
+    }
+
+    private static int readInt(byte[] data, int offset) {
+        return (data[offset] & 0xff) << 24 | (data[offset + 1] & 0xff) << 16
+                | (data[offset + 2] & 0xff) << 8 | (data[offset + 3] & 0xff);
+    }
+}
@@ -0,0 +1,141 @@
+/*
+* Copyright (C) 2017 The Android Open Source Project
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*  	http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package com.example.android.classicalmusicquiz.gradle;
+
+import groovy.json.JsonSlurper;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputDirectory;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Copies the app's assets into the build output, cutting every mp3 the sample catalog refers to
+ * down to an excerpt of its opening. Everything else is copied unchanged.
+ */
+public abstract class TrimMp3AssetsTask extends DefaultTask {
+
+    private static final String ASSET_URI_PREFIX = "asset:///";
+
+    /**
+     * @return The assets directory to read, holding the catalog and the mp3s.
+     */
+    @InputDirectory
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public abstract DirectoryProperty getAssetsDirectory();
+
+    /**
+     * @return The name of the sample catalog in the assets directory.
+     */
+    @Input
+    public abstract Property<String> getCatalogName();
+
+    /**
+     * @return How many seconds of each mp3 to keep.
+     */
+    @Input
+    public abstract Property<Integer> getExcerptSeconds();
+
+    /**
+     * @return The directory the trimmed assets are written to. Anything else in it is deleted.
+     */
+    @OutputDirectory
+    public abstract DirectoryProperty getOutputDirectory();
+
+    public TrimMp3AssetsTask() {
+        getCatalogName().convention("media.exolist.json");
+    }
+
+    @TaskAction
+    public void trim() throws IOException {
+        Path assets = getAssetsDirectory().get().getAsFile().toPath();
+        Path output = getOutputDirectory().get().getAsFile().toPath();
+        long excerptMillis = getExcerptSeconds().get() * 1000L;
+        Set<String> excerpts = readCatalogAssets(assets.resolve(getCatalogName().get()));
+
+        getProject().delete(output.toFile());
+        Files.createDirectories(output);
+
+        long bytesBefore = 0;
+        long bytesAfter = 0;
+        int trimmed = 0;
+        try (Stream<Path> files = Files.walk(assets)) {
+            for (Path source : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                String name = assets.relativize(source).toString().replace(File.separatorChar, '/');
+                Path target = output.resolve(assets.relativize(source));
+                Files.createDirectories(target.getParent());
+                if (!excerpts.remove(name)) {
+                    Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+                    continue;
+                }
+                Mp3Trimmer.Result result = Mp3Trimmer.trim(source.toFile(), target.toFile(),
+                        excerptMillis);
+                getLogger().info("{}: {} -> {} bytes, {} frames, {} ms", name,
+                        result.mInputBytes, result.mOutputBytes, result.mFrames,
+                        result.mExcerptMillis);
+                bytesBefore += result.mInputBytes;
+                bytesAfter += result.mOutputBytes;
+                trimmed++;
+            }
+        }
+
+        for (String missing : excerpts) {
+            getLogger().info("{} is in the catalog but not in the assets", missing);
+        }
+        getLogger().lifecycle(String.format(Locale.US,
+                "Trimmed %d mp3 assets to %d s: %d -> %d bytes, %d bytes saved",
+                trimmed, getExcerptSeconds().get(), bytesBefore, bytesAfter,
+                bytesBefore - bytesAfter));
+    }
+
+    /**
+     * @return The asset paths of the mp3s the catalog refers to.
+     */
+    private static Set<String> readCatalogAssets(Path catalog) {
+        Object samples = new JsonSlurper().parse(catalog.toFile());
+        if (!(samples instanceof List)) {
+            throw new GradleException(catalog + " isn't a list of samples");
+        }
+        Set<String> assets = new HashSet<>();
+        for (Object sample : (List<?>) samples) {
+            Object uri = sample instanceof Map ? ((Map<?, ?>) sample).get("uri") : null;
+            if (uri instanceof String && ((String) uri).startsWith(ASSET_URI_PREFIX)
+                    && ((String) uri).toLowerCase(Locale.US).endsWith(".mp3")) {
+                assets.add(((String) uri).substring(ASSET_URI_PREFIX.length()));
+            }
+        }
+        return assets;
+    }
+}
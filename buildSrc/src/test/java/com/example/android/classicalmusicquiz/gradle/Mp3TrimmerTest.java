@@ -0,0 +1,139 @@
+package com.example.android.classicalmusicquiz.gradle;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Trims small synthetic mp3s and checks that every cut falls on a frame boundary.
+ */
+public class Mp3TrimmerTest {
+
+    // MPEG-1 layer III, 128 kbit/s, 44.1 kHz, no CRC, no padding, stereo.
+    private static final byte[] HEADER = {(byte) 0xff, (byte) 0xfb, (byte) 0x90, 0x00};
+    private static final int FRAME_SIZE = 144 * 128000 / 44100;
+    private static final int SAMPLES_PER_FRAME = 1152;
+    // Stereo MPEG-1 side information comes before a Xing tag.
+    private static final int SIDE_INFO_SIZE = 32;
+    private static final int TAG_SIZE = 10 + 100;
+    private static final int AUDIO_FRAMES = 10;
+
+    private File mDirectory;
+    private File mInput;
+    private File mOutput;
+    private byte[][] mFrames;
+    private byte[] mTag;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = Files.createTempDirectory("mp3trimmer").toFile();
+        mInput = new File(mDirectory, "input.mp3");
+        mOutput = new File(mDirectory, "output.mp3");
+
+        // An ID3v2 tag with a 100 byte body, its size stored as four 7 bit bytes.
+        mTag = new byte[TAG_SIZE];
+        System.arraycopy(new byte[]{'I', 'D', '3', 3, 0, 0, 0, 0, 0, 100}, 0, mTag, 0, 10);
+        Arrays.fill(mTag, 10, TAG_SIZE, (byte) 'x');
+
+        mFrames = new byte[AUDIO_FRAMES][];
+        for (int i = 0; i < AUDIO_FRAMES; i++) {
+            mFrames[i] = frame((byte) (i + 1));
+        }
+
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        file.write(mTag);
+        file.write(xingFrame());
+        for (int i = 0; i < AUDIO_FRAMES; i++) {
+            file.write(mFrames[i]);
+            if (i == 1) {
+                // Junk between frames, including a sync pattern that isn't followed by a frame.
+                file.write(new byte[]{0x12, 0x34, (byte) 0xff, (byte) 0xfb, (byte) 0x90, 0x00,
+                        0x56});
+            }
+        }
+        // An ID3v1 tag at the end.
+        byte[] id3v1 = new byte[128];
+        id3v1[0] = 'T';
+        id3v1[1] = 'A';
+        id3v1[2] = 'G';
+        file.write(id3v1);
+        write(mInput, file.toByteArray());
+    }
+
+    @After
+    public void tearDown() {
+        mInput.delete();
+        mOutput.delete();
+        mDirectory.delete();
+    }
+
+    @Test
+    public void excerptEndsOnTheFirstFrameBoundaryAfterTheCut() throws IOException {
+        // 100 ms is 4410 samples, which takes four frames of 1152.
+        Mp3Trimmer.Result result = Mp3Trimmer.trim(mInput, mOutput, 100);
+
+        assertEquals(4, result.mFrames);
+        assertEquals(4 * SAMPLES_PER_FRAME * 1000L / 44100, result.mExcerptMillis);
+        assertEquals(mInput.length(), result.mInputBytes);
+        assertEquals(mOutput.length(), result.mOutputBytes);
+        assertOutputIsTagThenFrames(4);
+    }
+
+    @Test
+    public void excerptLongerThanTheFileKeepsEveryFrameAndDropsTheRest() throws IOException {
+        Mp3Trimmer.Result result = Mp3Trimmer.trim(mInput, mOutput, 60000);
+
+        assertEquals(AUDIO_FRAMES, result.mFrames);
+        // The Xing frame, the junk and the ID3v1 tag are gone.
+        assertOutputIsTagThenFrames(AUDIO_FRAMES);
+    }
+
+    @Test(expected = IOException.class)
+    public void fileWithoutFramesIsRejected() throws IOException {
+        write(mInput, mTag);
+        Mp3Trimmer.trim(mInput, mOutput, 1000);
+    }
+
+    /**
+     * Checks the output is the ID3v2 tag followed by the first audio frames, each copied whole.
+     */
+    private void assertOutputIsTagThenFrames(int frames) throws IOException {
+        byte[] output = Files.readAllBytes(mOutput.toPath());
+        assertEquals(TAG_SIZE + frames * FRAME_SIZE, output.length);
+        assertArrayEquals(mTag, Arrays.copyOfRange(output, 0, TAG_SIZE));
+        for (int i = 0; i < frames; i++) {
+            int start = TAG_SIZE + i * FRAME_SIZE;
+            assertArrayEquals("Frame " + i, mFrames[i],
+                    Arrays.copyOfRange(output, start, start + FRAME_SIZE));
+        }
+    }
+
+    private static byte[] frame(byte fill) {
+        byte[] frame = new byte[FRAME_SIZE];
+        Arrays.fill(frame, fill);
+        System.arraycopy(HEADER, 0, frame, 0, HEADER.length);
+        return frame;
+    }
+
+    private static byte[] xingFrame() {
+        byte[] frame = frame((byte) 0);
+        System.arraycopy(new byte[]{'X', 'i', 'n', 'g'}, 0, frame,
+                HEADER.length + SIDE_INFO_SIZE, 4);
+        return frame;
+    }
+
+    private static void write(File file, byte[] bytes) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(bytes);
+        }
+    }
+}